@@ -3,9 +3,11 @@ package com.tiendapesca.APItiendapesca;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 //l
 @SpringBootApplication
+@EnableScheduling
 public class ApItiendapescaApplication {
 
     public static void main(String[] args) {
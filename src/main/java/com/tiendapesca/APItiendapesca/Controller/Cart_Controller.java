@@ -2,17 +2,28 @@ package com.tiendapesca.APItiendapesca.Controller;
 
 import com.tiendapesca.APItiendapesca.Dtos.AddToCartRequestDTO;
 import com.tiendapesca.APItiendapesca.Dtos.CartItemRespoDTO;
+import com.tiendapesca.APItiendapesca.Dtos.CartMergeRequestDTO;
+import com.tiendapesca.APItiendapesca.Dtos.CartSummaryDTO;
+import com.tiendapesca.APItiendapesca.Dtos.CartValidationDTO;
 import com.tiendapesca.APItiendapesca.Entities.Users;
+import com.tiendapesca.APItiendapesca.Security.JWT_TokenUtil;
+import com.tiendapesca.APItiendapesca.Service.CartCompaction_Service;
+import com.tiendapesca.APItiendapesca.Service.CartEventStream;
+import com.tiendapesca.APItiendapesca.Service.CartSummaryCache;
+import com.tiendapesca.APItiendapesca.Service.CartWriteBehindStore;
 import com.tiendapesca.APItiendapesca.Service.Cart_Service;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controlador REST para gestionar operaciones del carrito de compras.
@@ -23,14 +34,31 @@ import java.util.List;
 public class Cart_Controller {
 
     private final Cart_Service cartService;
+    private final CartWriteBehindStore writeBehindStore;
+    private final CartSummaryCache summaryCache;
+    private final CartCompaction_Service compactionService;
+    private final CartEventStream eventStream;
+    private final JWT_TokenUtil jwtTokenUtil;
 
     /**
      * Constructor para inyección de dependencias del servicio de carrito.
      * @param cartService Servicio para operaciones del carrito
+     * @param writeBehindStore Capa en memoria del carrito con escritura diferida
+     * @param summaryCache Cache de resumenes del carrito
+     * @param compactionService Servicio de depuracion de carritos abandonados
+     * @param eventStream Conexiones SSE con los cambios del carrito
+     * @param jwtTokenUtil Utilidades JWT para los tokens de /cart/stream
      */
     @Autowired
-    public Cart_Controller(Cart_Service cartService) {
+    public Cart_Controller(Cart_Service cartService, CartWriteBehindStore writeBehindStore,
+                           CartSummaryCache summaryCache, CartCompaction_Service compactionService,
+                           CartEventStream eventStream, JWT_TokenUtil jwtTokenUtil) {
         this.cartService = cartService;
+        this.writeBehindStore = writeBehindStore;
+        this.summaryCache = summaryCache;
+        this.compactionService = compactionService;
+        this.eventStream = eventStream;
+        this.jwtTokenUtil = jwtTokenUtil;
     }
 
     /**
@@ -46,6 +74,20 @@ public class Cart_Controller {
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
+    /**
+     * Fusiona o reemplaza el carrito del usuario con un carrito completo enviado por el cliente
+     * (por ejemplo, el carrito de invitado al iniciar sesión).
+     * @param user Usuario autenticado
+     * @param request DTO con el modo (MERGE o REPLACE) y las líneas del carrito
+     * @return Carrito resultante
+     */
+    @PostMapping("/merge")
+    public ResponseEntity<List<CartItemRespoDTO>> mergeCart(@AuthenticationPrincipal Users user,
+                                                            @RequestBody CartMergeRequestDTO request) {
+        cartService.mergeCart(user, request);
+        return ResponseEntity.ok(cartService.getCartItems(user.getId()));
+    }
+
     /**
      * Obtiene todos los items del carrito del usuario autenticado.
      * @param user Usuario autenticado
@@ -66,6 +108,53 @@ public class Cart_Controller {
         return ResponseEntity.ok(cartService.calculateCartTotal(user));
     }
 
+    /**
+     * Obtiene el total y la cantidad de unidades del carrito, por ejemplo para el ícono del encabezado.
+     * @param user Usuario autenticado
+     * @return Resumen del carrito
+     */
+    @GetMapping("/summary")
+    public ResponseEntity<CartSummaryDTO> getCartSummary(@AuthenticationPrincipal Users user) {
+        return ResponseEntity.ok(cartService.getCartSummary(user));
+    }
+
+    /**
+     * Valida el carrito antes del checkout: informa en una sola respuesta los productos sin stock,
+     * eliminados o con precio cambiado. "valid" es false si alguno impide crear la orden.
+     * @param user Usuario autenticado
+     * @return Resultado de la validación
+     */
+    @GetMapping("/validate")
+    public ResponseEntity<CartValidationDTO> validateCart(@AuthenticationPrincipal Users user) {
+        return ResponseEntity.ok(cartService.validateCart(user));
+    }
+
+    /**
+     * Emite un token de un minuto para abrir /cart/stream desde el navegador: EventSource no puede
+     * enviar el header Authorization, así que el cliente abre /cart/stream?access_token=<token>.
+     * El token solo es válido para /cart/stream.
+     * @param user Usuario autenticado
+     * @return Token y su duración en segundos
+     */
+    @PostMapping("/stream/token")
+    public ResponseEntity<Map<String, Object>> createStreamToken(@AuthenticationPrincipal Users user) {
+        return ResponseEntity.ok(Map.of(
+                "token", jwtTokenUtil.generateStreamToken(user.getUsername()),
+                "expiresIn", jwtTokenUtil.getStreamExpirationSeconds()));
+    }
+
+    /**
+     * Abre una conexión Server-Sent Events con los cambios del carrito del usuario
+     * (ITEM_CHANGED, ITEM_REMOVED, CLEARED, RELOAD), en lugar de consultar /get y /total periódicamente.
+     * Acepta el header Authorization o ?access_token= con un token de /stream/token.
+     * @param user Usuario autenticado
+     * @return Emisor SSE; 429 o 503 si se alcanzó el límite de conexiones
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCart(@AuthenticationPrincipal Users user) {
+        return eventStream.connect(user.getId());
+    }
+
     /**
      * Actualiza la cantidad de un item específico en el carrito.
      * @param user Usuario autenticado
@@ -104,4 +193,52 @@ public class Cart_Controller {
         cartService.clearCart(user);
         return ResponseEntity.noContent().build();
     }
+
+    /**
+     * Estado de la capa en memoria del carrito: carritos cargados, pendientes de volcar y volcados.
+     * @return Mapa con las metricas de escritura diferida
+     */
+    @GetMapping("/admin/write-behind/stats")
+    public ResponseEntity<Map<String, Object>> getWriteBehindStats() {
+        return ResponseEntity.ok(writeBehindStore.getStats());
+    }
+
+    /**
+     * Estado de la cache de resumenes del carrito: entradas, aciertos, fallos y expulsiones.
+     * @return Mapa con las metricas de la cache
+     */
+    @GetMapping("/admin/summary/stats")
+    public ResponseEntity<Map<String, Object>> getSummaryCacheStats() {
+        return ResponseEntity.ok(summaryCache.getStats());
+    }
+
+    /**
+     * Inicia la depuración de carritos abandonados sin esperar a la ejecución programada.
+     * @return ResponseEntity con estado 202, o 409 si ya hay una depuración en ejecución
+     */
+    @PostMapping("/admin/compaction/run")
+    public ResponseEntity<Map<String, Object>> startCompaction() {
+        if (!compactionService.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(compactionService.getStats());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(compactionService.getStats());
+    }
+
+    /**
+     * Métricas de la depuración de carritos: ejecuciones, carritos y filas eliminadas.
+     * @return Mapa con las métricas acumuladas y la última ejecución
+     */
+    @GetMapping("/admin/compaction")
+    public ResponseEntity<Map<String, Object>> getCompactionStats() {
+        return ResponseEntity.ok(compactionService.getStats());
+    }
+
+    /**
+     * Métricas de las conexiones SSE del carrito: abiertas, máximo alcanzado y eventos enviados.
+     * @return Mapa con las métricas del stream
+     */
+    @GetMapping("/admin/stream/stats")
+    public ResponseEntity<Map<String, Object>> getStreamStats() {
+        return ResponseEntity.ok(eventStream.getStats());
+    }
 }
@@ -1,16 +1,32 @@
 package com.tiendapesca.APItiendapesca.Controller;
 
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfFileDTO;
 import com.tiendapesca.APItiendapesca.Dtos.InvoiceResponseDTO;
 import com.tiendapesca.APItiendapesca.Entities.Invoice;
+import com.tiendapesca.APItiendapesca.Entities.Users;
+import com.tiendapesca.APItiendapesca.Service.InvoiceIntegrity_Service;
+import com.tiendapesca.APItiendapesca.Service.InvoiceReissue_Service;
+import com.tiendapesca.APItiendapesca.Service.InvoiceStatement_Service;
 import com.tiendapesca.APItiendapesca.Service.Invoice_Service;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Controlador REST para gestionar operaciones relacionadas con facturas
@@ -21,13 +37,22 @@ import java.io.IOException;
 public class Invoice_Controller {
 
     private final Invoice_Service invoiceService;
+    private final InvoiceReissue_Service invoiceReissueService;
+    private final InvoiceStatement_Service invoiceStatementService;
+    private final InvoiceIntegrity_Service invoiceIntegrityService;
 
     /**
-     * Constructor para inyección de dependencias del servicio de facturas
+     * Constructor para inyección de dependencias de los servicios de facturas
      */
     @Autowired
-    public Invoice_Controller(Invoice_Service invoiceService) {
+    public Invoice_Controller(Invoice_Service invoiceService,
+                              InvoiceReissue_Service invoiceReissueService,
+                              InvoiceStatement_Service invoiceStatementService,
+                              InvoiceIntegrity_Service invoiceIntegrityService) {
         this.invoiceService = invoiceService;
+        this.invoiceReissueService = invoiceReissueService;
+        this.invoiceStatementService = invoiceStatementService;
+        this.invoiceIntegrityService = invoiceIntegrityService;
     }
     
     /**
@@ -66,21 +91,29 @@ public class Invoice_Controller {
     }
 
     /**
-     * Obtiene el archivo PDF de una factura específica
+     * Obtiene el archivo PDF de una factura específica.
+     * El archivo se transmite directamente desde disco (sin cargarlo completo en memoria),
+     * admite peticiones Range para descargas reanudables y responde 304 cuando el cliente
+     * ya posee la versión vigente (If-None-Match / If-Modified-Since).
      * @param orderId ID de la orden asociada a la factura
      * @return ResponseEntity con el archivo PDF o mensaje de error
      */
     @GetMapping("/{orderId}/pdf")
     public ResponseEntity<?> getInvoicePdf(@PathVariable Integer orderId) {
         try {
-            byte[] pdfBytes = invoiceService.getInvoicePdf(orderId);
-            
+            InvoicePdfFileDTO pdfFile = invoiceService.getInvoicePdfFile(orderId);
+
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDispositionFormData("filename", "factura_" + orderId + ".pdf");
-            headers.setCacheControl("must-revalidate, post-check=0, pre-check=0");
-            
-            return new ResponseEntity<>(pdfBytes, headers, HttpStatus.OK);
+            headers.setContentDispositionFormData("filename", pdfFile.getFileName());
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .eTag(pdfFile.getETag())
+                    .lastModified(pdfFile.getLastModified())
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .body(pdfFile.getResource());
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         } catch (IOException e) {
@@ -89,6 +122,74 @@ public class Invoice_Controller {
         }
     }
 
+    /**
+     * Obtiene la factura electrónica XML de una orden (se genera si aún no existe).
+     * Solo para el dueño de la orden o un administrador; a otros usuarios se responde 404
+     * @param user Usuario autenticado
+     * @param orderId ID de la orden asociada a la factura
+     * @return ResponseEntity con el archivo XML o mensaje de error
+     */
+    @GetMapping("/{orderId}/xml")
+    public ResponseEntity<?> getInvoiceXml(@AuthenticationPrincipal Users user, @PathVariable Integer orderId) {
+        try {
+            Path xmlPath = invoiceService.getInvoiceXml(orderId, user);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_XML);
+            headers.setContentDispositionFormData("filename", "factura_" + orderId + ".xml");
+            return ResponseEntity.ok().headers(headers).body(new FileSystemResource(xmlPath));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error al generar el XML de la factura: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Descarga todas las facturas del usuario autenticado en un rango de fechas.
+     * Con format=zip se envía un ZIP con los PDFs almacenados; con format=pdf se envía
+     * un estado de cuenta consolidado. La respuesta se transmite mientras se genera.
+     * @param user Usuario autenticado
+     * @param from Fecha inicial (inclusiva, yyyy-MM-dd)
+     * @param to Fecha final (inclusiva, yyyy-MM-dd)
+     * @param format zip o pdf
+     * @return ResponseEntity con el archivo o mensaje de error
+     */
+    @GetMapping("/statement")
+    public ResponseEntity<?> downloadInvoices(
+            @AuthenticationPrincipal Users user,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "zip") String format) {
+        if (from.isAfter(to)) {
+            return ResponseEntity.badRequest().body("La fecha inicial no puede ser posterior a la final");
+        }
+        boolean zip = "zip".equalsIgnoreCase(format);
+        if (!zip && !"pdf".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().body("Formato no soportado: " + format);
+        }
+        // El estado HTTP se decide antes de empezar a transmitir
+        if (invoiceStatementService.countInvoices(user.getId(), from, to) == 0) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No hay facturas en el rango indicado");
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        StreamingResponseBody body;
+        if (zip) {
+            headers.setContentType(MediaType.parseMediaType("application/zip"));
+            headers.setContentDisposition(ContentDisposition.attachment()
+                    .filename("facturas_" + from + "_" + to + ".zip").build());
+            body = out -> invoiceStatementService.writeZip(user.getId(), from, to, out);
+        } else {
+            headers.setContentType(MediaType.APPLICATION_PDF);
+            headers.setContentDisposition(ContentDisposition.attachment()
+                    .filename("estado_cuenta_" + from + "_" + to + ".pdf").build());
+            body = out -> invoiceStatementService.writeStatement(user, from, to, out);
+        }
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
     /**
      * Envía la factura por correo electrónico al cliente
      * @param orderId ID de la orden asociada a la factura
@@ -126,6 +227,24 @@ public class Invoice_Controller {
         }
     }
 
+    /**
+     * Endpoint para administradores - Cancela en lote las facturas de varias órdenes
+     * @param orderIds IDs de las órdenes cuyas facturas se cancelan
+     * @return ResponseEntity con la cantidad de facturas solicitadas y canceladas
+     */
+    @PutMapping("/admin/cancel")
+    public ResponseEntity<?> cancelInvoices(@RequestBody List<Integer> orderIds) {
+        try {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("requested", orderIds.size());
+            result.put("canceled", invoiceService.cancelInvoices(orderIds));
+            return ResponseEntity.ok(result);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error al cancelar facturas: " + e.getMessage());
+        }
+    }
+
     /**
      * Obtiene los detalles completos de una factura
      * @param orderId ID de la orden asociada a la factura
@@ -144,4 +263,92 @@ public class Invoice_Controller {
                     .body("Error al obtener detalles de factura: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Endpoint para administradores - Inicia la regeneración masiva de PDFs de facturas
+     * @param resume true para continuar desde el último checkpoint
+     * @return ResponseEntity con estado 202 y el progreso inicial, o 409 si ya está en ejecución
+     */
+    @PostMapping("/admin/reissue")
+    public ResponseEntity<Map<String, Object>> startReissue(
+            @RequestParam(defaultValue = "true") boolean resume) {
+        if (!invoiceReissueService.start(resume)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(invoiceReissueService.getStatus());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(invoiceReissueService.getStatus());
+    }
+
+    /**
+     * Endpoint para administradores - Consulta el progreso de la regeneración masiva
+     * @return ResponseEntity con el progreso y el rendimiento del proceso
+     */
+    @GetMapping("/admin/reissue/status")
+    public ResponseEntity<Map<String, Object>> getReissueStatus() {
+        return ResponseEntity.ok(invoiceReissueService.getStatus());
+    }
+
+    /**
+     * Endpoint para administradores - Detiene la regeneración masiva al terminar la página en curso
+     * @return ResponseEntity con el progreso actual
+     */
+    @PostMapping("/admin/reissue/stop")
+    public ResponseEntity<Map<String, Object>> stopReissue() {
+        invoiceReissueService.stop();
+        return ResponseEntity.ok(invoiceReissueService.getStatus());
+    }
+
+    /**
+     * Endpoint para administradores - Exporta en un solo XML las facturas electrónicas del rango
+     * @param from Fecha inicial (inclusiva, yyyy-MM-dd)
+     * @param to Fecha final (inclusiva, yyyy-MM-dd)
+     * @return ResponseEntity con el XML transmitido mientras se genera, o mensaje de error
+     */
+    @GetMapping("/admin/export/xml")
+    public ResponseEntity<?> exportInvoicesXml(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (from.isAfter(to)) {
+            return ResponseEntity.badRequest().body("La fecha inicial no puede ser posterior a la final");
+        }
+        if (invoiceStatementService.countAllInvoices(from, to) == 0) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No hay facturas en el rango indicado");
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_XML);
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename("facturas_" + from + "_" + to + ".xml").build());
+        StreamingResponseBody body = out -> invoiceStatementService.writeXmlExport(from, to, out);
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    /**
+     * Endpoint para administradores - Inicia la verificación de consistencia entre facturas y archivos
+     * @return ResponseEntity con estado 202, o 409 si ya hay una verificación en ejecución
+     */
+    @PostMapping("/admin/integrity/scan")
+    public ResponseEntity<Map<String, Object>> startIntegrityScan() {
+        if (!invoiceIntegrityService.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(invoiceIntegrityService.getReport());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(invoiceIntegrityService.getReport());
+    }
+
+    /**
+     * Endpoint para administradores - Reporte de la última verificación de consistencia
+     * @return ResponseEntity con facturas sin PDF, archivos faltantes, truncados y huérfanos
+     */
+    @GetMapping("/admin/integrity/report")
+    public ResponseEntity<Map<String, Object>> getIntegrityReport() {
+        return ResponseEntity.ok(invoiceIntegrityService.getReport());
+    }
+
+    /**
+     * Endpoint para administradores - Métricas del renderizado de PDFs
+     * @return ResponseEntity con profundidad de cola, histograma de tiempos y estado de la cache
+     */
+    @GetMapping("/admin/render/stats")
+    public ResponseEntity<Map<String, Object>> getRenderStats() {
+        return ResponseEntity.ok(invoiceService.getRenderStats());
+    }
+}
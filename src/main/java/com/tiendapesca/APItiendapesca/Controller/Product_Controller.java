@@ -1,6 +1,9 @@
 package com.tiendapesca.APItiendapesca.Controller;
 
+import com.tiendapesca.APItiendapesca.Dtos.ProductSearchResultDTO;
 import com.tiendapesca.APItiendapesca.Entities.Product;
+import com.tiendapesca.APItiendapesca.Service.CatalogSnapshotHolder;
+import com.tiendapesca.APItiendapesca.Service.ProductCatalogCache;
 import com.tiendapesca.APItiendapesca.Service.Product_Service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -10,7 +13,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controlador REST para la gestión de productos.
@@ -21,6 +26,12 @@ public class Product_Controller {
 
     @Autowired
     private Product_Service productService;
+
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    @Autowired
+    private CatalogSnapshotHolder snapshotHolder;
     
     /**
      * Obtiene una lista paginada de productos.
@@ -37,6 +48,61 @@ public class Product_Controller {
         return productService.AllProducts(pageable);
     }
 
+    /**
+     * Obtiene un producto por su ID.
+     * @param id identificador del producto
+     * @return el producto o 404 si no existe
+     */
+    @GetMapping("/get/{id}")
+    public ResponseEntity<?> getProduct(@PathVariable int id) {
+        try {
+            return ResponseEntity.ok(productService.getProduct(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(404).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Filtra productos por categoría, marca, rango de precio y disponibilidad.
+     * Los parámetros omitidos no filtran.
+     * @param category identificador de la categoría
+     * @param brand marca del producto
+     * @param minPrice precio mínimo
+     * @param maxPrice precio máximo
+     * @param inStock solo productos con stock (por defecto false)
+     * @param page número de página (por defecto 0)
+     * @param size cantidad de elementos por página (por defecto 10)
+     * @return página de productos ordenados por ID
+     */
+    @GetMapping("/filter")
+    public Page<Product> filterProducts(
+            @RequestParam(required = false) Integer category,
+            @RequestParam(required = false) String brand,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(defaultValue = "false") boolean inStock,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+
+        Pageable pageable = PageRequest.of(page, size);
+        return productService.filterProducts(category, brand, minPrice, maxPrice, inStock, pageable);
+    }
+
+    /**
+     * Busca productos por nombre, marca, categoría y descripción, ordenados por relevancia.
+     * Ignora tildes y mayúsculas y completa la última palabra, por lo que sirve para autocompletar.
+     * @param q texto a buscar
+     * @param size cantidad máxima de resultados (por defecto 10)
+     * @return productos encontrados
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<ProductSearchResultDTO>> searchProducts(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int size) {
+
+        return ResponseEntity.ok(productService.searchProducts(q, size));
+    }
+
     /**
      * Crea un nuevo producto en la base de datos.
      * @param product objeto Product con los datos a registrar
@@ -90,4 +156,22 @@ public class Product_Controller {
 
         return ResponseEntity.ok(products);
     }
+
+    /**
+     * Métricas de la cache del catálogo (aciertos, fallos, desalojos e invalidaciones).
+     * @return métricas de la cache
+     */
+    @GetMapping("/admin/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCatalogCacheStats() {
+        return ResponseEntity.ok(catalogCache.getStats());
+    }
+
+    /**
+     * Estado de la copia en memoria del catálogo (versión, productos y reconstrucciones).
+     * @return estado de la copia
+     */
+    @GetMapping("/admin/snapshot/stats")
+    public ResponseEntity<Map<String, Object>> getCatalogSnapshotStats() {
+        return ResponseEntity.ok(snapshotHolder.getStats());
+    }
 }
@@ -0,0 +1,65 @@
+package com.tiendapesca.APItiendapesca.Dtos;
+
+import java.math.BigDecimal;
+
+/**
+ * Problema encontrado en una linea del carrito al validarlo antes del checkout.
+ */
+public class CartIssueDTO {
+
+    /**
+     * OUT_OF_STOCK y PRODUCT_UNAVAILABLE impiden el checkout;
+     * PRICE_CHANGED es informativo: la orden se cobra al precio actual.
+     */
+    public enum Type {
+        OUT_OF_STOCK,
+        PRODUCT_UNAVAILABLE,
+        PRICE_CHANGED
+    }
+
+    private final Type type;
+    private final Integer productId;
+    private final String productName;
+    private final Integer requestedQuantity;
+    private final Integer availableStock;
+    private final BigDecimal cartPrice;
+    private final BigDecimal currentPrice;
+    private final String message;
+
+    // Constructor
+    public CartIssueDTO(Type type, Integer productId, String productName, Integer requestedQuantity,
+                        Integer availableStock, BigDecimal cartPrice, BigDecimal currentPrice, String message) {
+        this.type = type;
+        this.productId = productId;
+        this.productName = productName;
+        this.requestedQuantity = requestedQuantity;
+        this.availableStock = availableStock;
+        this.cartPrice = cartPrice;
+        this.currentPrice = currentPrice;
+        this.message = message;
+    }
+
+    /**
+     * Indica si el problema impide crear la orden.
+     */
+    public boolean isBlocking() {
+        return type != Type.PRICE_CHANGED;
+    }
+
+    // Getters
+    public Type getType() { return type; }
+
+    public Integer getProductId() { return productId; }
+
+    public String getProductName() { return productName; }
+
+    public Integer getRequestedQuantity() { return requestedQuantity; }
+
+    public Integer getAvailableStock() { return availableStock; }
+
+    public BigDecimal getCartPrice() { return cartPrice; }
+
+    public BigDecimal getCurrentPrice() { return currentPrice; }
+
+    public String getMessage() { return message; }
+}
@@ -13,11 +13,18 @@ public class CartItemRespoDTO {
     private Integer quantity;
     private BigDecimal unitPrice;
     private BigDecimal subtotal;
+    private boolean priceChanged;
 
     
     public CartItemRespoDTO(Integer cartItemId, Integer productId, String productName, 
                           String productImage, String brand, Integer quantity, 
                           BigDecimal unitPrice) {
+        this(cartItemId, productId, productName, productImage, brand, quantity, unitPrice, false);
+    }
+
+    public CartItemRespoDTO(Integer cartItemId, Integer productId, String productName, 
+                          String productImage, String brand, Integer quantity, 
+                          BigDecimal unitPrice, boolean priceChanged) {
         this.cartItemId = cartItemId;
         this.productId = productId;
         this.productName = productName;
@@ -26,6 +33,7 @@ public class CartItemRespoDTO {
         this.quantity = quantity;
         this.unitPrice = unitPrice;
         this.subtotal = unitPrice.multiply(BigDecimal.valueOf(quantity));
+        this.priceChanged = priceChanged;
     }
 
     // Getters & Setters
@@ -37,4 +45,5 @@ public class CartItemRespoDTO {
     public Integer getQuantity() { return quantity; }
     public BigDecimal getUnitPrice() { return unitPrice; }
     public BigDecimal getSubtotal() { return subtotal; }
+    public boolean isPriceChanged() { return priceChanged; }
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.tiendapesca.APItiendapesca.Dtos;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Dto para fusionar o reemplazar el carrito con el carrito local del cliente
+public class CartMergeRequestDTO {
+
+    /**
+     * MERGE suma las cantidades a las del carrito guardado;
+     * REPLACE deja el carrito exactamente con las lineas recibidas.
+     */
+    public enum Mode {
+        MERGE,
+        REPLACE
+    }
+
+    private Mode mode = Mode.MERGE;
+    private List<AddToCartRequestDTO> items = new ArrayList<>();
+
+    // Constructor, getters y setters
+    public CartMergeRequestDTO() {
+    }
+
+    public CartMergeRequestDTO(Mode mode, List<AddToCartRequestDTO> items) {
+        this.mode = mode;
+        this.items = items;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public List<AddToCartRequestDTO> getItems() {
+        return items;
+    }
+
+    public void setItems(List<AddToCartRequestDTO> items) {
+        this.items = items;
+    }
+}
@@ -0,0 +1,32 @@
+package com.tiendapesca.APItiendapesca.Dtos;
+
+import java.math.BigDecimal;
+
+/**
+ * Resumen del carrito de un usuario: monto total y cantidad de unidades.
+ * Inmutable para poder compartirse desde la cache sin copias.
+ */
+public class CartSummaryDTO {
+    private final BigDecimal total;
+    private final int itemCount;
+
+    // Constructor
+    public CartSummaryDTO(BigDecimal total, int itemCount) {
+        this.total = total;
+        this.itemCount = itemCount;
+    }
+
+    /**
+     * Resumen con los cambios de una linea aplicados.
+     * @param itemDelta Diferencia de unidades.
+     * @param amountDelta Diferencia del monto (precio * diferencia de unidades).
+     */
+    public CartSummaryDTO plus(int itemDelta, BigDecimal amountDelta) {
+        return new CartSummaryDTO(total.add(amountDelta), itemCount + itemDelta);
+    }
+
+    // Getters
+    public BigDecimal getTotal() { return total; }
+
+    public int getItemCount() { return itemCount; }
+}
@@ -0,0 +1,32 @@
+package com.tiendapesca.APItiendapesca.Dtos;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Resultado de validar el carrito antes del checkout: si se puede comprar, el subtotal
+ * a precios actuales y todos los problemas encontrados.
+ */
+public class CartValidationDTO {
+    private final boolean valid;
+    private final int itemCount;
+    private final BigDecimal subtotal;
+    private final List<CartIssueDTO> issues;
+
+    // Constructor
+    public CartValidationDTO(boolean valid, int itemCount, BigDecimal subtotal, List<CartIssueDTO> issues) {
+        this.valid = valid;
+        this.itemCount = itemCount;
+        this.subtotal = subtotal;
+        this.issues = issues;
+    }
+
+    // Getters
+    public boolean isValid() { return valid; }
+
+    public int getItemCount() { return itemCount; }
+
+    public BigDecimal getSubtotal() { return subtotal; }
+
+    public List<CartIssueDTO> getIssues() { return issues; }
+}
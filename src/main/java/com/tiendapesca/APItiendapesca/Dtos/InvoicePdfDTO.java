@@ -16,6 +16,7 @@ public class InvoicePdfDTO {
     private BigDecimal subtotal;
     private BigDecimal tax;
     private BigDecimal total;
+    private boolean canceled;
 
     
     public InvoicePdfDTO() {
@@ -73,4 +74,7 @@ public class InvoicePdfDTO {
     
     public BigDecimal getTotal() { return total; }
     public void setTotal(BigDecimal total) { this.total = total; }
+
+    public boolean isCanceled() { return canceled; }
+    public void setCanceled(boolean canceled) { this.canceled = canceled; }
 }
\ No newline at end of file
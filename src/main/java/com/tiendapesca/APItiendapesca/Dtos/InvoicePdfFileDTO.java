@@ -0,0 +1,36 @@
+package com.tiendapesca.APItiendapesca.Dtos;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * Describe el archivo PDF de una factura listo para ser transmitido al cliente,
+ * junto con los metadatos necesarios para validacion de cache (ETag / Last-Modified).
+ */
+public class InvoicePdfFileDTO {
+    private final String fileName;
+    private final Resource resource;
+    private final long contentLength;
+    private final long lastModified;
+    private final String eTag;
+
+    // Constructor
+    public InvoicePdfFileDTO(String fileName, Resource resource, long contentLength,
+                             long lastModified, String eTag) {
+        this.fileName = fileName;
+        this.resource = resource;
+        this.contentLength = contentLength;
+        this.lastModified = lastModified;
+        this.eTag = eTag;
+    }
+
+    // Getters
+    public String getFileName() { return fileName; }
+
+    public Resource getResource() { return resource; }
+
+    public long getContentLength() { return contentLength; }
+
+    public long getLastModified() { return lastModified; }
+
+    public String getETag() { return eTag; }
+}
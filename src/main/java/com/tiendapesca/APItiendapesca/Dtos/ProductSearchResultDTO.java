@@ -0,0 +1,38 @@
+package com.tiendapesca.APItiendapesca.Dtos;
+
+import java.math.BigDecimal;
+
+/**
+ * Producto encontrado por la busqueda (/products/search), con su puntaje de relevancia.
+ * No incluye el stock, que cambia con cada compra: se consulta en el detalle del producto.
+ */
+public class ProductSearchResultDTO {
+    private final int id;
+    private final String name;
+    private final String brand;
+    private final BigDecimal price;
+    private final String imageUrl;
+    private final String category;
+    private final double score;
+
+    // Constructor
+    public ProductSearchResultDTO(int id, String name, String brand, BigDecimal price,
+                                  String imageUrl, String category, double score) {
+        this.id = id;
+        this.name = name;
+        this.brand = brand;
+        this.price = price;
+        this.imageUrl = imageUrl;
+        this.category = category;
+        this.score = score;
+    }
+
+    // Getters
+    public int getId() { return id; }
+    public String getName() { return name; }
+    public String getBrand() { return brand; }
+    public BigDecimal getPrice() { return price; }
+    public String getImageUrl() { return imageUrl; }
+    public String getCategory() { return category; }
+    public double getScore() { return score; }
+}
@@ -1,10 +1,13 @@
 package com.tiendapesca.APItiendapesca.Entities;
 
 import jakarta.persistence.*;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "cart")
+@Table(name = "cart", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_cart_user_product", columnNames = {"user_id", "product_id"})
+})
 public class Cart {
 
     @Id
@@ -22,9 +25,19 @@ public class Cart {
     @Column(name = "quantity", nullable = false)
     private Integer quantity;
 
+    // Ultima actividad de la linea: la base de datos la fija al insertar y se renueva al cambiar el
+    // carrito (Cart_Repository.touchByUserId); la depuracion de carritos abandonados la usa
     @Column(name = "date_added", insertable = false, updatable = false)
     private LocalDateTime dateAdded;
 
+    // Precio del producto al agregarlo; se actualiza al cambiar el precio del producto
+    @Column(name = "unit_price", precision = 10, scale = 2)
+    private BigDecimal unitPrice;
+
+    // Indica que el precio cambio desde que el usuario agrego o modifico la linea
+    @Column(name = "price_changed", nullable = false)
+    private boolean priceChanged;
+
 
     // --- Constructores ---
     public Cart() {}
@@ -76,4 +89,20 @@ public class Cart {
     public void setDateAdded(LocalDateTime dateAdded) {
         this.dateAdded = dateAdded;
     }
+
+    public BigDecimal getUnitPrice() {
+        return unitPrice;
+    }
+
+    public void setUnitPrice(BigDecimal unitPrice) {
+        this.unitPrice = unitPrice;
+    }
+
+    public boolean isPriceChanged() {
+        return priceChanged;
+    }
+
+    public void setPriceChanged(boolean priceChanged) {
+        this.priceChanged = priceChanged;
+    }
 }
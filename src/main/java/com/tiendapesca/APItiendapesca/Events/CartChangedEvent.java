@@ -0,0 +1,44 @@
+package com.tiendapesca.APItiendapesca.Events;
+
+public class CartChangedEvent {
+
+    /**
+     * ITEM_CHANGED: cambio la cantidad de una linea (itemDelta puede ser negativo).
+     * ITEM_REMOVED: se elimino una linea. CLEARED: se vacio el carrito.
+     * RELOAD: cambio masivo; el cliente debe volver a consultar el carrito.
+     */
+    public enum Type {
+        ITEM_CHANGED,
+        ITEM_REMOVED,
+        CLEARED,
+        RELOAD
+    }
+
+    private final int userId;
+    private final Type type;
+    private final Integer productId;
+    private final int itemDelta;
+
+    public CartChangedEvent(int userId, Type type, Integer productId, int itemDelta) {
+        this.userId = userId;
+        this.type = type;
+        this.productId = productId;
+        this.itemDelta = itemDelta;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public int getItemDelta() {
+        return itemDelta;
+    }
+}
@@ -0,0 +1,13 @@
+package com.tiendapesca.APItiendapesca.Events;
+
+public class ProductDeletedEvent {
+    private final int productId;
+
+    public ProductDeletedEvent(int productId) {
+        this.productId = productId;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+}
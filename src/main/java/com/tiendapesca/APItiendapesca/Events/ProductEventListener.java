@@ -5,7 +5,12 @@ import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionalEventListener;
 
+import com.tiendapesca.APItiendapesca.Service.CartSummaryCache;
+import com.tiendapesca.APItiendapesca.Service.CatalogSnapshotHolder;
+import com.tiendapesca.APItiendapesca.Service.Cart_Service;
 import com.tiendapesca.APItiendapesca.Service.FeaturedProduct_Service;
+import com.tiendapesca.APItiendapesca.Service.ProductCatalogCache;
+import com.tiendapesca.APItiendapesca.Service.ProductSearchIndex;
 
 import jakarta.transaction.Transactional;
 
@@ -15,12 +20,30 @@ public class ProductEventListener {
     @Autowired
     private FeaturedProduct_Service featuredProductService;
 
+    @Autowired
+    private CartSummaryCache cartSummaryCache;
+
+    @Autowired
+    private Cart_Service cartService;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    @Autowired
+    private CatalogSnapshotHolder catalogSnapshotHolder;
+
     @EventListener
     @TransactionalEventListener(fallbackExecution = true)
     @Transactional
     public void handleProductCreated(ProductCreatedEvent event) {
         System.out.println("Producto creado - " + event.getProduct().getName());
-        
+        productSearchIndex.put(event.getProduct());
+        productCatalogCache.invalidateProduct(event.getProduct().getId());
+        catalogSnapshotHolder.requestRebuild();
+
         try {
             featuredProductService.refreshFeaturedProducts();
             System.out.println("Productos destacados actualizados automáticamente");
@@ -28,4 +51,31 @@ public class ProductEventListener {
             System.err.println("Error actualizando productos destacados: " + e.getMessage());
         }
     }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleProductUpdated(ProductUpdatedEvent event) {
+        productSearchIndex.put(event.getProduct());
+        productCatalogCache.invalidateProduct(event.getProduct().getId());
+        catalogSnapshotHolder.requestRebuild();
+
+        if (event.isPriceChanged()) {
+            // Actualizar el precio guardado en los carritos que tienen el producto
+            cartService.repriceProduct(event.getProduct().getId(), event.getProduct().getPrice());
+            // Los totales cacheados de los carritos usan el precio anterior
+            cartSummaryCache.invalidateAll();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleProductDeleted(ProductDeletedEvent event) {
+        productSearchIndex.remove(event.getProductId());
+        productCatalogCache.invalidateProduct(event.getProductId());
+        catalogSnapshotHolder.requestRebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleStockChanged(ProductStockChangedEvent event) {
+        productCatalogCache.invalidateProducts(event.getProductIds());
+        catalogSnapshotHolder.requestRebuild();
+    }
 }
\ No newline at end of file
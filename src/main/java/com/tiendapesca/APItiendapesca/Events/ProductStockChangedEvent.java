@@ -0,0 +1,18 @@
+package com.tiendapesca.APItiendapesca.Events;
+
+import java.util.Collection;
+
+/**
+ * Stock de productos modificado por una orden (compra o cancelacion).
+ */
+public class ProductStockChangedEvent {
+    private final Collection<Integer> productIds;
+
+    public ProductStockChangedEvent(Collection<Integer> productIds) {
+        this.productIds = productIds;
+    }
+
+    public Collection<Integer> getProductIds() {
+        return productIds;
+    }
+}
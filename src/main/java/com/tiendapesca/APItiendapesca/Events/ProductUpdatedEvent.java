@@ -0,0 +1,30 @@
+package com.tiendapesca.APItiendapesca.Events;
+
+import java.math.BigDecimal;
+
+import com.tiendapesca.APItiendapesca.Entities.Product;
+
+public class ProductUpdatedEvent {
+    private final Product product;
+    private final BigDecimal previousPrice;
+
+    public ProductUpdatedEvent(Product product, BigDecimal previousPrice) {
+        this.product = product;
+        this.previousPrice = previousPrice;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public BigDecimal getPreviousPrice() {
+        return previousPrice;
+    }
+
+    public boolean isPriceChanged() {
+        if (previousPrice == null || product.getPrice() == null) {
+            return previousPrice != product.getPrice();
+        }
+        return previousPrice.compareTo(product.getPrice()) != 0;
+    }
+}
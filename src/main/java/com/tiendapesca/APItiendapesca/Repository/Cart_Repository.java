@@ -1,10 +1,16 @@
 package com.tiendapesca.APItiendapesca.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import com.tiendapesca.APItiendapesca.Dtos.CartItemRespoDTO;
 import com.tiendapesca.APItiendapesca.Entities.Cart;
 import com.tiendapesca.APItiendapesca.Entities.Product;
@@ -18,12 +24,13 @@ import com.tiendapesca.APItiendapesca.Entities.Users;
 public interface Cart_Repository extends JpaRepository<Cart, Integer> {
 
     /**
-     * Consulta personalizada para obtener los items del carrito de un usuario específico
+     * Consulta personalizada para obtener los items del carrito de un usuario específico.
+     * El precio es el guardado en la línea; las líneas anteriores a ese campo usan el precio actual
      * @param userId ID del usuario
      * @return Lista de DTOs con la información de los items del carrito
      */
     @Query("SELECT new com.tiendapesca.APItiendapesca.Dtos.CartItemRespoDTO(" +
-           "c.id, p.id, p.name, p.image_url, p.brand, c.quantity, p.price) " +
+           "c.id, p.id, p.name, p.image_url, p.brand, c.quantity, COALESCE(c.unitPrice, p.price), c.priceChanged) " +
            "FROM Cart c JOIN c.product p WHERE c.user.id = :userId")
     List<CartItemRespoDTO> findCartItemsByUserId(Integer userId);
     
@@ -36,16 +43,23 @@ public interface Cart_Repository extends JpaRepository<Cart, Integer> {
     Optional<Cart> findByUserAndProduct(Users user, Product product);
     
     /**
-     * Elimina todos los items del carrito de un usuario específico
+     * Elimina todos los items del carrito de un usuario específico en una sola sentencia
+     * (sin cargar las entidades, a diferencia de un delete derivado)
      * @param user Usuario dueño del carrito
+     * @return Cantidad de filas eliminadas
      */
-    void deleteByUser(Users user);
+    @Modifying
+    @Query("DELETE FROM Cart c WHERE c.user = :user")
+    int deleteByUser(Users user);
     
     /**
-     * Elimina todos los items del carrito por ID de usuario
+     * Elimina todos los items del carrito por ID de usuario en una sola sentencia
      * @param userId ID del usuario
+     * @return Cantidad de filas eliminadas
      */
-    void deleteByUserId(Integer userId);
+    @Modifying
+    @Query("DELETE FROM Cart c WHERE c.user.id = :userId")
+    int deleteByUserId(Integer userId);
     
     /**
      * Encuentra todos los items del carrito de un usuario específico
@@ -53,4 +67,106 @@ public interface Cart_Repository extends JpaRepository<Cart, Integer> {
      * @return Lista de items del carrito
      */
     List<Cart> findByUser(Users user);
+
+    /**
+     * Encuentra todos los items del carrito por ID de usuario, sin cargar el usuario
+     * @param userId ID del usuario
+     * @return Lista de items del carrito
+     */
+    List<Cart> findByUserId(Integer userId);
+
+    /**
+     * Obtiene las lineas del carrito de un usuario sin cargar entidades
+     * @param userId ID del usuario
+     * @return Filas [id del item, id del producto, cantidad]
+     */
+    @Query("SELECT c.id, c.product.id, c.quantity FROM Cart c WHERE c.user.id = :userId")
+    List<Object[]> findLinesByUserId(Integer userId);
+
+    /**
+     * Registra actividad en el carrito de un usuario: renueva date_added de todas sus lineas.
+     * Se usa al cambiar cantidades o quitar productos, para que la depuracion no elimine un
+     * carrito en uso cuyas lineas se agregaron hace tiempo
+     * @param userId ID del usuario
+     * @return Cantidad de líneas actualizadas
+     */
+    @Modifying
+    @Query(value = "UPDATE cart SET date_added = NOW() WHERE user_id = :userId", nativeQuery = true)
+    int touchByUserId(Integer userId);
+
+    // CONSULTAS PARA LA DEPURACION DE CARRITOS ABANDONADOS
+
+    /**
+     * Obtiene una pagina de usuarios cuyo carrito no tiene actividad desde la fecha indicada,
+     * posteriores a un ID dado (paginacion por clave)
+     * @param lastUserId Ultimo ID de usuario de la pagina anterior (0 para la primera)
+     * @param cutoff Fecha limite: la actividad mas reciente del carrito es anterior a ella
+     * @param pageable Tamaño de la pagina
+     * @return IDs de usuario ordenados ascendentemente
+     */
+    @Query("SELECT c.user.id FROM Cart c WHERE c.user.id > :lastUserId " +
+           "GROUP BY c.user.id HAVING MAX(c.dateAdded) < :cutoff ORDER BY c.user.id")
+    List<Integer> findIdleUserIdsAfter(Integer lastUserId, LocalDateTime cutoff, Pageable pageable);
+
+    /**
+     * Filtra los usuarios cuyo carrito sigue inactivo, para confirmar antes de eliminar
+     * @param userIds IDs de usuario candidatos
+     * @param cutoff Fecha limite de inactividad
+     * @return IDs de usuario que siguen inactivos
+     */
+    @Query("SELECT c.user.id FROM Cart c WHERE c.user.id IN :userIds " +
+           "GROUP BY c.user.id HAVING MAX(c.dateAdded) < :cutoff")
+    List<Integer> findIdleUserIdsIn(Collection<Integer> userIds, LocalDateTime cutoff);
+
+    /**
+     * Elimina en una sola sentencia todos los items del carrito de varios usuarios
+     * @param userIds IDs de usuario
+     * @return Cantidad de filas eliminadas
+     */
+    @Modifying
+    @Query("DELETE FROM Cart c WHERE c.user.id IN :userIds")
+    int deleteByUserIdIn(Collection<Integer> userIds);
+
+    /**
+     * Actualiza en una sola sentencia el precio guardado de todas las líneas de un producto
+     * (usa el índice de product_id) y las marca como modificadas
+     * @param productId ID del producto
+     * @param price Nuevo precio del producto
+     * @return Cantidad de líneas actualizadas
+     */
+    @Modifying
+    @Query("UPDATE Cart c SET c.unitPrice = :price, c.priceChanged = true " +
+           "WHERE c.product.id = :productId AND (c.unitPrice IS NULL OR c.unitPrice <> :price)")
+    int repriceProduct(Integer productId, BigDecimal price);
+
+    /**
+     * Agrega cantidad a la línea de un producto en una sola sentencia: inserta la línea o, si ya
+     * existe (clave única user_id + product_id), suma la cantidad. El stock se verifica en la misma
+     * sentencia contra la cantidad ya presente en el carrito, así dos solicitudes concurrentes
+     * nunca duplican la línea ni pierden un incremento. Al sumar también renueva date_added, la
+     * última actividad de la línea
+     * @param userId ID del usuario
+     * @param productId ID del producto
+     * @param quantity Cantidad a agregar
+     * @return 0 si el producto no existe o el stock no alcanza; 1 si se insertó; 2 si se sumó
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO cart (user_id, product_id, quantity, unit_price, price_changed) " +
+                   "SELECT :userId, p.id, :quantity, p.price, 0 FROM product p " +
+                   "WHERE p.id = :productId AND p.stock >= :quantity + COALESCE(" +
+                   "(SELECT c.quantity FROM cart c WHERE c.user_id = :userId AND c.product_id = :productId), 0) " +
+                   "ON DUPLICATE KEY UPDATE unit_price = p.price, price_changed = 0, " +
+                   "quantity = cart.quantity + :quantity, date_added = NOW()",
+           nativeQuery = true)
+    int addQuantity(Integer userId, Integer productId, Integer quantity);
+
+    /**
+     * Obtiene las líneas del carrito de un usuario junto con su usuario y producto en una sola consulta,
+     * para validar el carrito y crear la orden sin consultas adicionales
+     * @param userId ID del usuario
+     * @return Líneas del carrito con el producto cargado
+     */
+    @Query("SELECT c FROM Cart c JOIN FETCH c.user JOIN FETCH c.product WHERE c.user.id = :userId ORDER BY c.id")
+    List<Cart> findWithProductByUserId(Integer userId);
 }
\ No newline at end of file
@@ -2,9 +2,17 @@ package com.tiendapesca.APItiendapesca.Repository;
 
 import com.tiendapesca.APItiendapesca.Entities.Invoice;
 import com.tiendapesca.APItiendapesca.Entities.Orders;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -34,4 +42,127 @@ public interface Invoice_Repository extends JpaRepository<Invoice, Integer> {
      * @return true si existe una factura para la orden, false en caso contrario
      */
     boolean existsByOrder(Orders order);
-}
\ No newline at end of file
+
+    /**
+     * Verifica si existe una factura para el ID de una orden, sin cargar la orden
+     * @param orderId ID de la orden a verificar
+     * @return true si existe una factura para la orden, false en caso contrario
+     */
+    boolean existsByOrderId(Integer orderId);
+
+    /**
+     * Busca en una sola consulta las facturas de varias ordenes
+     * @param orderIds IDs de las ordenes
+     * @return Facturas existentes (las ordenes sin factura no aparecen)
+     */
+    @Query("SELECT i FROM Invoice i WHERE i.order.id IN :orderIds")
+    List<Invoice> findByOrderIdIn(@Param("orderIds") Collection<Integer> orderIds);
+
+    // CONSULTAS PARA PROCESOS MASIVOS
+
+    /**
+     * Obtiene una pagina de IDs de factura posteriores a un ID dado (paginacion por clave)
+     * @param lastId Ultimo ID procesado
+     * @param pageable Tamaño de la pagina (solo se usa el limite)
+     * @return IDs de factura ordenados ascendentemente
+     */
+    @Query("SELECT i.id FROM Invoice i WHERE i.id > :lastId ORDER BY i.id")
+    List<Integer> findIdsAfter(@Param("lastId") Integer lastId, Pageable pageable);
+
+    /**
+     * Obtiene una pagina de facturas posteriores a un ID dado, solo con los datos
+     * necesarios para verificar su almacenamiento (paginacion por clave)
+     * @param lastId Ultimo ID procesado
+     * @param pageable Tamaño de la pagina (solo se usa el limite)
+     * @return Filas [id, invoiceNumber, pdfUrl] ordenadas por ID
+     */
+    @Query("SELECT i.id, i.invoiceNumber, i.pdfUrl FROM Invoice i WHERE i.id > :lastId ORDER BY i.id")
+    List<Object[]> findStorageInfoAfter(@Param("lastId") Integer lastId, Pageable pageable);
+
+    /**
+     * Obtiene una pagina de IDs de las facturas de un usuario emitidas en un rango de fechas,
+     * posteriores a un ID dado (paginacion por clave)
+     * @param userId ID del usuario dueño de las ordenes
+     * @param from Fecha inicial (inclusiva)
+     * @param to Fecha final (exclusiva)
+     * @param lastId Ultimo ID procesado
+     * @param pageable Tamaño de la pagina (solo se usa el limite)
+     * @return IDs de factura ordenados ascendentemente
+     */
+    @Query("SELECT i.id FROM Invoice i WHERE i.order.user.id = :userId " +
+            "AND i.date >= :from AND i.date < :to AND i.id > :lastId ORDER BY i.id")
+    List<Integer> findIdsByUserAndDateAfter(@Param("userId") Integer userId,
+                                            @Param("from") LocalDateTime from,
+                                            @Param("to") LocalDateTime to,
+                                            @Param("lastId") Integer lastId,
+                                            Pageable pageable);
+
+    /**
+     * Cuenta las facturas de un usuario emitidas en un rango de fechas
+     * @param userId ID del usuario dueño de las ordenes
+     * @param from Fecha inicial (inclusiva)
+     * @param to Fecha final (exclusiva)
+     * @return Cantidad de facturas
+     */
+    @Query("SELECT COUNT(i) FROM Invoice i WHERE i.order.user.id = :userId " +
+            "AND i.date >= :from AND i.date < :to")
+    long countByUserAndDate(@Param("userId") Integer userId,
+                            @Param("from") LocalDateTime from,
+                            @Param("to") LocalDateTime to);
+
+    /**
+     * Obtiene una pagina de IDs de las facturas emitidas en un rango de fechas,
+     * posteriores a un ID dado (paginacion por clave)
+     * @param from Fecha inicial (inclusiva)
+     * @param to Fecha final (exclusiva)
+     * @param lastId Ultimo ID procesado
+     * @param pageable Tamaño de la pagina (solo se usa el limite)
+     * @return IDs de factura ordenados ascendentemente
+     */
+    @Query("SELECT i.id FROM Invoice i WHERE i.date >= :from AND i.date < :to AND i.id > :lastId ORDER BY i.id")
+    List<Integer> findIdsByDateAfter(@Param("from") LocalDateTime from,
+                                     @Param("to") LocalDateTime to,
+                                     @Param("lastId") Integer lastId,
+                                     Pageable pageable);
+
+    /**
+     * Cuenta las facturas emitidas en un rango de fechas
+     * @param from Fecha inicial (inclusiva)
+     * @param to Fecha final (exclusiva)
+     * @return Cantidad de facturas
+     */
+    @Query("SELECT COUNT(i) FROM Invoice i WHERE i.date >= :from AND i.date < :to")
+    long countByDate(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * Carga en una sola consulta las facturas indicadas con su orden, usuario, detalles y productos
+     * @param ids IDs de las facturas
+     * @return Facturas con todas las relaciones necesarias para renderizar el PDF
+     */
+    @Query("SELECT DISTINCT i FROM Invoice i " +
+            "JOIN FETCH i.order o " +
+            "LEFT JOIN FETCH o.user " +
+            "LEFT JOIN FETCH o.orderDetails od " +
+            "LEFT JOIN FETCH od.product " +
+            "WHERE i.id IN :ids")
+    List<Invoice> findAllWithOrderDetailsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Actualiza la ruta del PDF de una factura sin cargar la entidad
+     * @param id ID de la factura
+     * @param pdfUrl Nueva ruta del archivo
+     * @return Numero de filas actualizadas
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Invoice i SET i.pdfUrl = :pdfUrl WHERE i.id = :id")
+    int updatePdfUrl(@Param("id") Integer id, @Param("pdfUrl") String pdfUrl);
+
+    /**
+     * Lee solo el estado de cancelacion de una factura, sin cargar la entidad
+     * @param id ID de la factura
+     * @return true si la factura esta cancelada, null si no existe
+     */
+    @Query("SELECT i.isCanceled FROM Invoice i WHERE i.id = :id")
+    Boolean findIsCanceledById(@Param("id") Integer id);
+}
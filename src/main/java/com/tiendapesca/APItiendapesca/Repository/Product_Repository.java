@@ -1,5 +1,6 @@
 package com.tiendapesca.APItiendapesca.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import org.springframework.data.domain.Page;
@@ -18,11 +19,33 @@ public interface Product_Repository extends JpaRepository<Product, Integer> {
     @Query("SELECT DISTINCT(p.categorie.name) FROM Product p WHERE p.stock > 0")
     List<String> findDistinctCategory();
 
+    /**
+     * Busqueda por nombre con LIKE: recorre toda la tabla. Solo se usa mientras se construye
+     * el indice de busqueda en memoria (ver ProductSearchIndex).
+     */
     @Query("SELECT p FROM Product p WHERE LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%'))")
     Page<Product> searchByName(String name, Pageable pageable);
+
+    /**
+     * Pagina de productos con su categoria, a partir de un ID (para recorrer todo el catalogo).
+     */
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.categorie WHERE p.id > :lastId ORDER BY p.id")
+    List<Product> findWithCategorieAfter(@Param("lastId") int lastId, Pageable pageable);
     
     Page<Product> findAll(Pageable pageable);
 
+    /**
+     * Filtro del catalogo; los criterios nulos no filtran.
+     */
+    @Query("SELECT p FROM Product p WHERE (:categoryId IS NULL OR p.categorie.id = :categoryId) " +
+           "AND (:brand IS NULL OR LOWER(p.brand) = LOWER(:brand)) " +
+           "AND (:minPrice IS NULL OR p.price >= :minPrice) " +
+           "AND (:maxPrice IS NULL OR p.price <= :maxPrice) " +
+           "AND (:inStock = false OR p.stock > 0) ORDER BY p.id")
+    Page<Product> filter(@Param("categoryId") Integer categoryId, @Param("brand") String brand,
+                         @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice,
+                         @Param("inStock") boolean inStock, Pageable pageable);
+
     // MÉTODOS CORREGIDOS PARA PRODUCTOS DESTACADOS:
     
     /**
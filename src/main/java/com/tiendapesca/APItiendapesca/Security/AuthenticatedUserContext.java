@@ -0,0 +1,40 @@
+package com.tiendapesca.APItiendapesca.Security;
+
+import com.tiendapesca.APItiendapesca.Entities.Users;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Acceso al usuario autenticado de la solicitud actual.
+ *
+ * JWT_Filter carga el usuario desde la base de datos una vez por solicitud y lo deja como
+ * principal en el SecurityContext (ligado al hilo de la solicitud). Los servicios usan este
+ * componente para confiar en esa carga y no volver a consultar si el usuario existe.
+ */
+@Component
+public class AuthenticatedUserContext {
+
+    /**
+     * Usuario cargado por JWT_Filter para la solicitud actual.
+     * @return Usuario autenticado o vacio si no hay autenticacion (por ejemplo, tareas en segundo plano).
+     */
+    public Optional<Users> currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof Users user) {
+            return Optional.of(user);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Indica si el ID corresponde al usuario autenticado en esta solicitud, es decir,
+     * si ya se sabe que el usuario existe sin consultar la base de datos.
+     * @param userId ID del usuario.
+     */
+    public boolean isAuthenticatedAs(Integer userId) {
+        return userId != null && currentUser().map(user -> userId.equals(user.getId())).orElse(false);
+    }
+}
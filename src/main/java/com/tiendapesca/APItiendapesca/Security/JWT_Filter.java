@@ -16,7 +16,8 @@ import java.io.IOException;
 /**
  * Filtro JWT que intercepta cada solicitud HTTP para validar Tokens JWT.
  * Este filtro se ejecuta una vez por cada solicitud (OncePerRequestFilter) y:
- *   Extrae el token JWT del header Authorization
+ *   Extrae el token JWT del header Authorization (o, solo para GET /cart/stream, del
+ *   parámetro access_token con un token de alcance cart-stream, porque EventSource no envía headers)
  *   Valida el token usando JWT_TokenUtil
  *   Si es válido, establece la autenticación en el SecurityContext
  * Componentes inyectados:
@@ -26,6 +27,9 @@ import java.io.IOException;
 @Component
 public class JWT_Filter extends OncePerRequestFilter {
 
+    private static final String STREAM_PATH = "/cart/stream";
+    private static final String STREAM_TOKEN_PARAM = "access_token";
+
     private final JWT_TokenUtil jwtTokenUtil;
     private final CustomUserDetailsService customUserDetailsService;
 
@@ -49,12 +53,22 @@ public class JWT_Filter extends OncePerRequestFilter {
         //Extraer el token JWT (formato: "Bearer <token>")
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
             jwt = authorizationHeader.substring(7); // Elimina "Bearer " para obtener solo el token
-            username = jwtTokenUtil.extractUsername(jwt); // Extrae el username del token
+            // Los tokens de /cart/stream no sirven como sesión
+            if (!jwtTokenUtil.isStreamToken(jwt)) {
+                username = jwtTokenUtil.extractUsername(jwt); // Extrae el username del token
+            }
+        } else if (isStreamRequest(request) && request.getParameter(STREAM_TOKEN_PARAM) != null) {
+            jwt = request.getParameter(STREAM_TOKEN_PARAM);
+            // En la URL solo se aceptan tokens de corta duración de /cart/stream
+            if (jwtTokenUtil.isStreamToken(jwt)) {
+                username = jwtTokenUtil.extractUsername(jwt);
+            }
         }
 
         // Validar token y configurar autenticación
         if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            // Cargar UserDetails desde la base de datos
+            // Cargar UserDetails desde la base de datos (unica carga del usuario en la solicitud:
+            // los servicios lo reutilizan a traves de AuthenticatedUserContext)
             UserDetails userDetails = this.customUserDetailsService.loadUserByUsername(username);
             
             // Verificar validez del token contra los UserDetails
@@ -78,4 +92,9 @@ public class JWT_Filter extends OncePerRequestFilter {
         // Continuar con la cadena de filtros
         filterChain.doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    private static boolean isStreamRequest(HttpServletRequest request) {
+        return "GET".equals(request.getMethod())
+                && STREAM_PATH.equals(request.getRequestURI().substring(request.getContextPath().length()));
+    }
+}
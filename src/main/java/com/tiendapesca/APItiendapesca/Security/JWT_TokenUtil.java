@@ -18,6 +18,9 @@ public class JWT_TokenUtil {
 
     private final SecretKey SECRET_KEY;
     private final long EXPIRATION_TIME = 1000 * 60 * 60 * 10; // 10 horas
+    private final long STREAM_EXPIRATION_TIME = 1000 * 60; // 1 minuto
+    private static final String SCOPE_CLAIM = "scope";
+    private static final String STREAM_SCOPE = "cart-stream";
 
     /**
      * Constructor que inicializa la clave secreta para firmar tokens
@@ -44,6 +47,43 @@ public class JWT_TokenUtil {
                 .compact(); 
     }
 
+    /**
+     * Genera un token de corta duración que solo sirve para abrir /cart/stream. EventSource no
+     * permite enviar el header Authorization, por lo que el navegador lo pasa en la URL
+     * (?access_token=...); al vencer en un minuto, que quede en logs o historial no expone la sesión.
+     * @param username Nombre de usuario para incluir en el token
+     * @return Token JWT firmado con alcance cart-stream
+     */
+    public String generateStreamToken(String username) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(SCOPE_CLAIM, STREAM_SCOPE);
+
+        return Jwts.builder()
+                .setClaims(claims)
+                .setSubject(username)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + STREAM_EXPIRATION_TIME))
+                .signWith(SECRET_KEY, SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    /**
+     * Duración de los tokens de /cart/stream en segundos
+     */
+    public long getStreamExpirationSeconds() {
+        return STREAM_EXPIRATION_TIME / 1000;
+    }
+
+    /**
+     * Indica si el token es un token de /cart/stream
+     * @param token Token JWT
+     * @return true si tiene alcance cart-stream
+     * @throws JwtException Si el token es inválido o no puede ser procesado
+     */
+    public boolean isStreamToken(String token) throws JwtException {
+        return STREAM_SCOPE.equals(extractClaim(token, claims -> claims.get(SCOPE_CLAIM, String.class)));
+    }
+
     /**
      * Valida si un token es válido para el UserDetails proporcionado
      * @param token Token JWT a validar
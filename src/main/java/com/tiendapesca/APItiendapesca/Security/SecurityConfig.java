@@ -43,9 +43,12 @@ public class SecurityConfig {
                     "/images/**"
                 ).permitAll()
                 .requestMatchers("/auth/**").permitAll()
+                .requestMatchers("/products/admin/**").hasRole("ADMIN")
                 .requestMatchers("/products/**").permitAll()
+                .requestMatchers("/cart/admin/**").hasRole("ADMIN")
                 .requestMatchers("/cart/**").authenticated()
                     .requestMatchers("/orders/**").authenticated()
+                .requestMatchers("/invoices/admin/**").hasRole("ADMIN")
                 .requestMatchers("/admin/**").hasRole("ADMIN")
                 .anyRequest().authenticated()
             )
@@ -0,0 +1,177 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Repository.Cart_Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Depura los carritos abandonados: elimina todos los items de los usuarios cuyo carrito no
+ * tiene actividad desde hace mas de cart.compaction.ttl-days dias (segun date_added, que se
+ * renueva al agregar productos, cambiar cantidades y quitar lineas).
+ * Los usuarios se recorren por paginas ordenadas por ID y cada pagina se elimina en su propia
+ * transaccion corta, por lo que los bloqueos sobre la tabla cart duran solo un lote.
+ */
+@Service
+public class CartCompaction_Service {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartCompaction_Service.class);
+
+    private final Cart_Repository cartRepository;
+    private final CartWriteBehindStore writeBehindStore;
+    private final CartSummaryCache summaryCache;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int ttlDays;
+    private final int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong totalCarts = new AtomicLong();
+    private final AtomicLong totalRows = new AtomicLong();
+    private volatile Map<String, Object> lastRun = new LinkedHashMap<>();
+
+    @Autowired
+    public CartCompaction_Service(Cart_Repository cartRepository,
+                                  CartWriteBehindStore writeBehindStore,
+                                  CartSummaryCache summaryCache,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${cart.compaction.enabled:true}") boolean enabled,
+                                  @Value("${cart.compaction.ttl-days:30}") int ttlDays,
+                                  @Value("${cart.compaction.batch-size:500}") int batchSize) {
+        this.cartRepository = cartRepository;
+        this.writeBehindStore = writeBehindStore;
+        this.summaryCache = summaryCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.ttlDays = ttlDays;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Ejecucion programada (por defecto todos los dias a las 3:30).
+     */
+    @Scheduled(cron = "${cart.compaction.cron:0 30 3 * * *}")
+    public void scheduledRun() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    /**
+     * Inicia la depuracion en segundo plano.
+     * @return false si ya hay una depuracion en ejecucion.
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("running", true);
+        report.put("startedAt", LocalDateTime.now());
+        lastRun = report;
+
+        Thread worker = new Thread(this::run, "cart-compaction");
+        worker.setDaemon(true);
+        worker.start();
+        return true;
+    }
+
+    private void run() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        LocalDateTime cutoff = startedAt.minusDays(ttlDays);
+        long carts = 0;
+        long rows = 0;
+        int batches = 0;
+        Map<String, Object> report = new LinkedHashMap<>();
+        try {
+            int lastUserId = 0;
+            while (true) {
+                List<Integer> candidates = cartRepository.findIdleUserIdsAfter(
+                        lastUserId, cutoff, PageRequest.of(0, batchSize));
+                if (candidates.isEmpty()) break;
+                lastUserId = candidates.get(candidates.size() - 1);
+
+                // Un carrito cargado en memoria tuvo actividad reciente aunque aun no se haya volcado
+                List<Integer> userIds = new ArrayList<>(candidates.size());
+                for (Integer userId : candidates) {
+                    if (!writeBehindStore.isLoaded(userId)) userIds.add(userId);
+                }
+                if (userIds.isEmpty()) continue;
+
+                int[] deleted = transactionTemplate.execute(status -> deleteBatch(userIds, cutoff));
+                carts += deleted[0];
+                rows += deleted[1];
+                batches++;
+            }
+            report.put("running", false);
+        } catch (Exception e) {
+            logger.error("Error en la depuracion de carritos: {}", e.getMessage(), e);
+            report.put("running", false);
+            report.put("error", e.getMessage());
+        } finally {
+            runs.incrementAndGet();
+            totalCarts.addAndGet(carts);
+            totalRows.addAndGet(rows);
+
+            report.put("startedAt", startedAt);
+            report.put("finishedAt", LocalDateTime.now());
+            report.put("durationSeconds", Duration.between(startedAt, LocalDateTime.now()).toSeconds());
+            report.put("cutoff", cutoff);
+            report.put("batches", batches);
+            report.put("cartsDeleted", carts);
+            report.put("rowsDeleted", rows);
+            lastRun = report;
+            running.set(false);
+        }
+        logger.info("Depuracion de carritos: {} carritos y {} items eliminados en {} lotes", carts, rows, batches);
+    }
+
+    /**
+     * Confirma la inactividad de un lote y lo elimina en la misma transaccion.
+     * @return {carritos eliminados, filas eliminadas}
+     */
+    private int[] deleteBatch(List<Integer> userIds, LocalDateTime cutoff) {
+        // Un usuario pudo modificar su carrito entre la lectura de la pagina y esta transaccion
+        List<Integer> idle = cartRepository.findIdleUserIdsIn(userIds, cutoff);
+        if (idle.isEmpty()) {
+            return new int[]{0, 0};
+        }
+        int rows = cartRepository.deleteByUserIdIn(idle);
+        for (Integer userId : idle) {
+            summaryCache.invalidateAfterCommit(userId);
+        }
+        return new int[]{idle.size(), rows};
+    }
+
+    /**
+     * Metricas acumuladas y resultado de la ultima ejecucion.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ttlDays", ttlDays);
+        stats.put("batchSize", batchSize);
+        stats.put("running", running.get());
+        stats.put("runs", runs.get());
+        stats.put("totalCartsDeleted", totalCarts.get());
+        stats.put("totalRowsDeleted", totalRows.get());
+        stats.put("lastRun", lastRun);
+        return stats;
+    }
+}
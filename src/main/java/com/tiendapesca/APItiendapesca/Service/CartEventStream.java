@@ -0,0 +1,324 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Events.CartChangedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Envia a los clientes conectados por Server-Sent Events (GET /cart/stream) los cambios de su
+ * carrito, para que las pestañas y dispositivos de un usuario se sincronicen sin consultar
+ * /cart/get ni /cart/total periodicamente.
+ *
+ * Las conexiones abiertas no ocupan hilos: cada cliente tiene un buffer acotado de eventos y
+ * un pool pequeño de hilos vacia los buffers con pendientes. Si un cliente lento llena su
+ * buffer, los eventos acumulados se reemplazan por un unico RELOAD que le indica volver a
+ * consultar el carrito, asi la memoria por conexion nunca crece.
+ *
+ * emitter.send escribe en el socket de forma bloqueante: un cliente que no lee puede dejar a un
+ * hilo de envio detenido. Una revision periodica cierra los clientes cuyo envio supera
+ * cart.stream.send-timeout-ms, interrumpe el hilo y agrega un hilo al pool mientras el envio
+ * detenido no termine (hasta cart.stream.max-threads), para que el resto de conexiones siga
+ * recibiendo eventos.
+ */
+@Component
+public class CartEventStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartEventStream.class);
+
+    private final ConcurrentHashMap<Integer, List<Client>> clients = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor senders;
+    private final int threads;
+    private final int maxThreads;
+    private final long sendTimeoutMs;
+    private final int bufferSize;
+    private final int maxConnections;
+    private final int maxPerUser;
+    private final long timeoutMs;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger peakConnections = new AtomicInteger();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder stalled = new LongAdder();
+    // Hilos de envio detenidos en clientes ya cerrados, reemplazados con hilos adicionales
+    private final AtomicInteger stalledSenders = new AtomicInteger();
+
+    public CartEventStream(@Value("${cart.stream.threads:2}") int threads,
+                           @Value("${cart.stream.max-threads:16}") int maxThreads,
+                           @Value("${cart.stream.send-timeout-ms:5000}") long sendTimeoutMs,
+                           @Value("${cart.stream.buffer-size:32}") int bufferSize,
+                           @Value("${cart.stream.max-connections:10000}") int maxConnections,
+                           @Value("${cart.stream.max-per-user:5}") int maxPerUser,
+                           @Value("${cart.stream.timeout-ms:1800000}") long timeoutMs) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.threads = threads;
+        this.maxThreads = Math.max(threads, maxThreads);
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.senders = new ThreadPoolExecutor(threads, this.maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "cart-stream-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.bufferSize = bufferSize;
+        this.maxConnections = maxConnections;
+        this.maxPerUser = maxPerUser;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Abre una conexion SSE para el usuario. Al vencer el tiempo maximo el navegador
+     * (EventSource) se reconecta solo.
+     * @param userId ID del usuario autenticado.
+     * @return Emisor a devolver desde el controlador.
+     * @throws ResponseStatusException 503 si el nodo llego al maximo de conexiones,
+     *         429 si el usuario ya tiene el maximo de conexiones abiertas.
+     */
+    public SseEmitter connect(int userId) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            rejected.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Demasiadas conexiones abiertas");
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Client client = new Client(userId, emitter);
+        List<Client> userClients = clients.compute(userId, (id, current) -> {
+            List<Client> list = current != null ? current : new CopyOnWriteArrayList<>();
+            if (list.size() < maxPerUser) list.add(client);
+            return list;
+        });
+        if (!userClients.contains(client)) {
+            connections.decrementAndGet();
+            rejected.increment();
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Demasiadas conexiones para el usuario");
+        }
+        peakConnections.accumulateAndGet(connections.get(), Math::max);
+
+        emitter.onCompletion(() -> remove(client));
+        emitter.onTimeout(() -> remove(client));
+        emitter.onError(error -> remove(client));
+
+        client.enqueue(SseEmitter.event().name("CONNECTED").data(Map.of()));
+        return emitter;
+    }
+
+    /**
+     * Reenvia un cambio del carrito a las conexiones del usuario, una vez confirmada la transaccion.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCartChanged(CartChangedEvent event) {
+        published.increment();
+        List<Client> userClients = clients.get(event.getUserId());
+        if (userClients == null || userClients.isEmpty()) return;
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("productId", event.getProductId());
+        data.put("itemDelta", event.getItemDelta());
+        for (Client client : userClients) {
+            client.enqueue(SseEmitter.event().name(event.getType().name()).data(data));
+        }
+    }
+
+    /**
+     * Envia un comentario a todas las conexiones para mantenerlas abiertas a traves de proxies
+     * y detectar clientes desconectados.
+     */
+    @Scheduled(fixedDelayString = "${cart.stream.heartbeat-ms:25000}")
+    public void heartbeat() {
+        for (List<Client> userClients : clients.values()) {
+            for (Client client : userClients) {
+                client.enqueue(SseEmitter.event().comment("ping"));
+            }
+        }
+    }
+
+    /**
+     * Cierra los clientes con un envio en curso hace mas de cart.stream.send-timeout-ms. El
+     * emisor no se completa aqui (send tiene tomado su lock): se interrumpe el hilo, y cuando el
+     * envio termina o falla, drain completa el emisor con error.
+     */
+    @Scheduled(fixedDelayString = "${cart.stream.send-check-ms:1000}")
+    public void dropStalledClients() {
+        long now = System.currentTimeMillis();
+        for (List<Client> userClients : clients.values()) {
+            for (Client client : userClients) {
+                if (client.stallIfSlow(now)) {
+                    stalled.increment();
+                    logger.debug("Conexion de carrito del usuario {} cerrada por envio lento", client.userId);
+                    remove(client);
+                    resizeSenders();
+                }
+            }
+        }
+    }
+
+    private synchronized void resizeSenders() {
+        senders.setCorePoolSize(Math.min(threads + stalledSenders.get(), maxThreads));
+    }
+
+    private void remove(Client client) {
+        if (!client.closed.compareAndSet(false, true)) return;
+        connections.decrementAndGet();
+        clients.computeIfPresent(client.userId, (id, list) -> {
+            list.remove(client);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * Metricas: conexiones abiertas y maximo alcanzado, eventos publicados y enviados,
+     * buffers desbordados y conexiones rechazadas.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("connections", connections.get());
+        stats.put("peakConnections", peakConnections.get());
+        stats.put("maxConnections", maxConnections);
+        stats.put("users", clients.size());
+        stats.put("published", published.sum());
+        stats.put("sent", sent.sum());
+        stats.put("overflows", overflows.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("stalled", stalled.sum());
+        stats.put("stalledSenders", stalledSenders.get());
+        stats.put("senderThreads", senders.getPoolSize());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+        for (List<Client> userClients : clients.values()) {
+            for (Client client : userClients) {
+                client.emitter.complete();
+            }
+        }
+    }
+
+    /**
+     * Conexion de un cliente con su buffer acotado de eventos pendientes.
+     */
+    private class Client {
+        private final int userId;
+        private final SseEmitter emitter;
+        private final ArrayDeque<SseEmitter.SseEventBuilder> buffer = new ArrayDeque<>();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // true mientras hay una tarea de envio programada o en curso para este cliente
+        private boolean draining = false;
+        // Hilo y hora de inicio del envio en curso (null/0 si no hay envio)
+        private Thread sender;
+        private long sendStartedAt;
+        private boolean stalledSend;
+
+        Client(int userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void enqueue(SseEmitter.SseEventBuilder event) {
+            if (closed.get()) return;
+            synchronized (this) {
+                if (buffer.size() >= bufferSize) {
+                    // Los cambios perdidos se recuperan volviendo a consultar el carrito
+                    overflows.increment();
+                    buffer.clear();
+                    buffer.add(SseEmitter.event().name(CartChangedEvent.Type.RELOAD.name()).data(Map.of()));
+                } else {
+                    buffer.add(event);
+                }
+                if (draining) return;
+                draining = true;
+            }
+            senders.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                SseEmitter.SseEventBuilder event;
+                synchronized (this) {
+                    event = buffer.poll();
+                    if (event == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    send(event);
+                    if (closed.get()) {
+                        // Cerrado por envio lento mientras se enviaba
+                        throw new IOException("Envio demasiado lento");
+                    }
+                    sent.increment();
+                } catch (Exception e) {
+                    logger.debug("Conexion de carrito cerrada para el usuario {}: {}", userId, e.getMessage());
+                    remove(this);
+                    emitter.completeWithError(e);
+                    synchronized (this) {
+                        buffer.clear();
+                        draining = false;
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            synchronized (this) {
+                sender = Thread.currentThread();
+                sendStartedAt = System.currentTimeMillis();
+            }
+            try {
+                emitter.send(event);
+            } finally {
+                boolean wasStalled;
+                synchronized (this) {
+                    sender = null;
+                    sendStartedAt = 0;
+                    wasStalled = stalledSend;
+                    stalledSend = false;
+                    if (wasStalled) stalledSenders.decrementAndGet();
+                    // Una interrupcion por envio lento no debe afectar a la proxima tarea del hilo
+                    Thread.interrupted();
+                }
+                if (wasStalled) resizeSenders();
+            }
+        }
+
+        /**
+         * Marca el envio en curso como detenido si supera el tiempo maximo e interrumpe el hilo.
+         * @return true si el envio se marco como detenido en esta llamada.
+         */
+        synchronized boolean stallIfSlow(long now) {
+            if (sender == null || stalledSend || now - sendStartedAt <= sendTimeoutMs) return false;
+            stalledSend = true;
+            stalledSenders.incrementAndGet();
+            sender.interrupt();
+            return true;
+        }
+    }
+}
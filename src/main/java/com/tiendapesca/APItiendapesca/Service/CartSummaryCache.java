@@ -0,0 +1,182 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.CartSummaryDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Cache en memoria del resumen del carrito (total y unidades) por usuario, limitada por
+ * cantidad de entradas (se expulsan las menos usadas). Las modificaciones del carrito actualizan
+ * el resumen en cache de forma incremental cuando la transaccion confirma, asi un rollback nunca
+ * deja un total incorrecto. Las lecturas no toman bloqueos.
+ *
+ * Cada usuario tiene su propia version: un resumen calculado desde la base de datos solo se
+ * guarda si el carrito de ese usuario no cambio mientras se calculaba, y los cambios de otros
+ * usuarios no lo descartan. invalidateAll (cambio de precios) mueve una epoca global que
+ * descarta todas las cargas en curso.
+ */
+@Component
+public class CartSummaryCache {
+
+    private final int maxEntries;
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+    // Origen de las versiones de todos los usuarios: una version nunca se repite, aunque la
+    // entrada del usuario se elimine y se vuelva a crear
+    private final AtomicLong sequence = new AtomicLong();
+    // Version en la que se invalido todo; las cargas que empezaron antes no se guardan
+    private volatile long epoch = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CartSummaryCache(@Value("${cart.summary.cache.max-entries:10000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Busca el resumen del carrito de un usuario.
+     * @return Resumen cacheado o null si hay que calcularlo.
+     */
+    public CartSummaryDTO get(int userId) {
+        Entry entry = entries.get(userId);
+        if (entry == null || entry.summary == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastAccess = System.nanoTime();
+        return entry.summary;
+    }
+
+    /**
+     * Registra que se va a calcular el resumen de un usuario desde la base de datos.
+     * @return Version a pasar a put junto con el resumen calculado.
+     */
+    public long beginLoad(int userId) {
+        // Si no hay entrada se deja una sin resumen, que los cambios del carrito descartan
+        return entries.computeIfAbsent(userId, id -> new Entry(null, sequence.incrementAndGet())).version;
+    }
+
+    /**
+     * Guarda un resumen calculado si el carrito del usuario no cambio (ni se invalido todo)
+     * desde beginLoad.
+     */
+    public void put(int userId, CartSummaryDTO summary, long loadedVersion) {
+        if (loadedVersion <= epoch) return;
+        entries.computeIfPresent(userId,
+                (id, current) -> current.version == loadedVersion ? new Entry(summary, loadedVersion) : current);
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    /**
+     * Aplica el cambio de una linea al resumen cacheado cuando la transaccion actual confirme.
+     * @param userId ID del usuario.
+     * @param itemDelta Diferencia de unidades.
+     * @param unitPrice Precio unitario del producto de la linea.
+     */
+    public void applyAfterCommit(int userId, int itemDelta, BigDecimal unitPrice) {
+        BigDecimal amountDelta = unitPrice.multiply(BigDecimal.valueOf(itemDelta));
+        afterCommit(() -> apply(userId, itemDelta, amountDelta));
+    }
+
+    /**
+     * Deja el resumen del usuario en cero cuando la transaccion confirme (carrito vaciado).
+     */
+    public void clearAfterCommit(int userId) {
+        afterCommit(() -> entries.put(userId, new Entry(new CartSummaryDTO(BigDecimal.ZERO, 0),
+                sequence.incrementAndGet())));
+    }
+
+    /**
+     * Descarta el resumen del usuario cuando la transaccion confirme; se recalcula en la siguiente lectura.
+     */
+    public void invalidateAfterCommit(int userId) {
+        // Sin la entrada, una carga en curso ya no encuentra su version y no se guarda
+        afterCommit(() -> entries.remove(userId));
+    }
+
+    /**
+     * Descarta todos los resumenes, por ejemplo cuando cambia el precio de un producto.
+     */
+    public void invalidateAll() {
+        epoch = sequence.incrementAndGet();
+        entries.clear();
+    }
+
+    private void apply(int userId, int itemDelta, BigDecimal amountDelta) {
+        // Una entrada sin resumen es una carga en curso: se elimina para que no se guarde
+        entries.computeIfPresent(userId, (id, current) -> current.summary == null ? null
+                : new Entry(current.summary.plus(itemDelta, amountDelta), sequence.incrementAndGet()));
+    }
+
+    /**
+     * Expulsa las entradas usadas hace mas tiempo, con un 10% extra para no ordenar en cada carga.
+     */
+    private void evict() {
+        int excess = entries.size() - maxEntries + maxEntries / 10;
+        if (excess <= 0) return;
+
+        List<Map.Entry<Integer, Entry>> oldest = entries.entrySet().stream()
+                .sorted((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess))
+                .limit(excess)
+                .collect(Collectors.toList());
+        for (Map.Entry<Integer, Entry> candidate : oldest) {
+            if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Resumen del estado de la cache para monitoreo.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    /**
+     * Resumen cacheado de un usuario con su version. Sin resumen, marca una carga en curso.
+     */
+    private static final class Entry {
+        private final CartSummaryDTO summary;
+        private final long version;
+        private volatile long lastAccess = System.nanoTime();
+
+        Entry(CartSummaryDTO summary, long version) {
+            this.summary = summary;
+            this.version = version;
+        }
+    }
+}
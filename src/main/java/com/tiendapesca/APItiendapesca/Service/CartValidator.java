@@ -0,0 +1,176 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.CartIssueDTO;
+import com.tiendapesca.APItiendapesca.Dtos.CartValidationDTO;
+import com.tiendapesca.APItiendapesca.Entities.Cart;
+import com.tiendapesca.APItiendapesca.Entities.Product;
+import com.tiendapesca.APItiendapesca.Repository.Cart_Repository;
+import com.tiendapesca.APItiendapesca.Repository.Product_Repository;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Valida el carrito de un usuario contra el estado actual de los productos: stock suficiente,
+ * productos que ya no existen y precios que cambiaron. Lo usan tanto /cart/validate como el
+ * checkout, por lo que ambos aplican exactamente las mismas reglas.
+ *
+ * Las lineas se cargan con sus productos en una sola consulta. Dentro de una transaccion los
+ * productos devueltos quedan administrados, y el checkout descuenta el stock sobre ellos sin
+ * volver a buscarlos.
+ */
+@Component
+public class CartValidator {
+
+    private final Cart_Repository cartRepository;
+    private final Product_Repository productRepository;
+    private final CartWriteBehindStore writeBehindStore;
+
+    public CartValidator(Cart_Repository cartRepository,
+                         Product_Repository productRepository,
+                         CartWriteBehindStore writeBehindStore) {
+        this.cartRepository = cartRepository;
+        this.productRepository = productRepository;
+        this.writeBehindStore = writeBehindStore;
+    }
+
+    /**
+     * Valida todas las lineas del carrito del usuario y reporta todos los problemas a la vez.
+     * @param userId ID del usuario.
+     * @return Lineas comprables y problemas encontrados.
+     */
+    public CartValidation validate(int userId) {
+        CartValidation validation = new CartValidation();
+        if (writeBehindStore.isEnabled()) {
+            validateInMemory(userId, validation);
+        } else {
+            for (Cart line : cartRepository.findWithProductByUserId(userId)) {
+                validation.check(line.getProduct(), line.getProduct().getId(), line.getQuantity(),
+                        line.getUnitPrice(), line.isPriceChanged());
+            }
+        }
+        return validation;
+    }
+
+    private void validateInMemory(int userId, CartValidation validation) {
+        List<CartWriteBehindStore.CartLine> lines = writeBehindStore.getLines(userId);
+        if (lines.isEmpty()) return;
+
+        List<Integer> productIds = new ArrayList<>(lines.size());
+        for (CartWriteBehindStore.CartLine line : lines) {
+            productIds.add(line.getProductId());
+        }
+        Map<Integer, Product> products = new HashMap<>();
+        for (Product product : productRepository.findAllById(productIds)) {
+            products.put(product.getId(), product);
+        }
+        for (CartWriteBehindStore.CartLine line : lines) {
+            validation.check(products.get(line.getProductId()), line.getProductId(), line.getQuantity(),
+                    line.getUnitPrice(), line.isPriceChanged());
+        }
+    }
+
+    /**
+     * Resultado de la validacion: lineas con su producto actual y problemas encontrados.
+     */
+    public static class CartValidation {
+        private final List<Line> lines = new ArrayList<>();
+        private final List<CartIssueDTO> issues = new ArrayList<>();
+
+        private void check(Product product, int productId, int quantity, BigDecimal cartPrice, boolean priceChanged) {
+            if (product == null) {
+                issues.add(new CartIssueDTO(CartIssueDTO.Type.PRODUCT_UNAVAILABLE, productId, null, quantity,
+                        0, cartPrice, null, "El producto ya no está disponible"));
+                return;
+            }
+            lines.add(new Line(product, quantity));
+
+            if (product.getStock() < quantity) {
+                issues.add(new CartIssueDTO(CartIssueDTO.Type.OUT_OF_STOCK, productId, product.getName(), quantity,
+                        product.getStock(), cartPrice, product.getPrice(),
+                        String.format("No hay suficiente stock para %s. Stock disponible: %d",
+                                product.getName(), product.getStock())));
+            }
+            boolean priceDiffers = cartPrice != null && product.getPrice() != null
+                    && cartPrice.compareTo(product.getPrice()) != 0;
+            if (priceChanged || priceDiffers) {
+                issues.add(new CartIssueDTO(CartIssueDTO.Type.PRICE_CHANGED, productId, product.getName(), quantity,
+                        product.getStock(), cartPrice, product.getPrice(),
+                        String.format("El precio de %s cambió", product.getName())));
+            }
+        }
+
+        /**
+         * Lineas cuyo producto existe, con el producto cargado.
+         */
+        public List<Line> getLines() {
+            return lines;
+        }
+
+        public List<CartIssueDTO> getIssues() {
+            return issues;
+        }
+
+        /**
+         * Indica si el carrito se puede comprar (ningun problema bloqueante).
+         */
+        public boolean isValid() {
+            for (CartIssueDTO issue : issues) {
+                if (issue.isBlocking()) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Mensajes de los problemas bloqueantes, separados por punto y coma.
+         */
+        public String getBlockingMessage() {
+            StringJoiner message = new StringJoiner("; ");
+            for (CartIssueDTO issue : issues) {
+                if (issue.isBlocking()) message.add(issue.getMessage());
+            }
+            return message.toString();
+        }
+
+        /**
+         * Resumen para el cliente, con el subtotal a precios actuales.
+         */
+        public CartValidationDTO toDto() {
+            BigDecimal subtotal = BigDecimal.ZERO;
+            int itemCount = 0;
+            for (Line line : lines) {
+                subtotal = subtotal.add(line.getSubtotal());
+                itemCount += line.getQuantity();
+            }
+            return new CartValidationDTO(isValid(), itemCount, subtotal, issues);
+        }
+    }
+
+    /**
+     * Linea del carrito con su producto actual.
+     */
+    public static class Line {
+        private final Product product;
+        private final int quantity;
+
+        public Line(Product product, int quantity) {
+            this.product = product;
+            this.quantity = quantity;
+        }
+
+        public Product getProduct() { return product; }
+
+        public int getQuantity() { return quantity; }
+
+        public BigDecimal getUnitPrice() { return product.getPrice(); }
+
+        public BigDecimal getSubtotal() {
+            return product.getPrice().multiply(BigDecimal.valueOf(quantity));
+        }
+    }
+}
@@ -0,0 +1,697 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Entities.Cart;
+import com.tiendapesca.APItiendapesca.Entities.Product;
+import com.tiendapesca.APItiendapesca.Repository.Cart_Repository;
+import com.tiendapesca.APItiendapesca.Repository.Product_Repository;
+import com.tiendapesca.APItiendapesca.Repository.Users_Repository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Capa en memoria del carrito con escritura diferida (write-behind), activada con
+ * cart.write-behind.enabled=true. Cada usuario tiene sus lineas en arreglos paralelos
+ * (producto, cantidad, precio guardado y marca de precio cambiado, igual que las columnas
+ * unit_price y price_changed de la tabla); las modificaciones se aplican en memoria, se registran en un
+ * journal local de solo anexado y se vuelcan a la tabla cart de forma periodica,
+ * agrupando todos los cambios de un usuario en una sola transaccion.
+ *
+ * Las lineas que aun no se volcaron tienen un ID provisional negativo (-productId);
+ * al volcarse reciben el ID real de la tabla, y ambos IDs siguen siendo validos.
+ * Si el proceso termina de forma abrupta, el journal se reaplica al iniciar.
+ */
+@Component
+public class CartWriteBehindStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CartWriteBehindStore.class);
+
+    private final Cart_Repository cartRepository;
+    private final Product_Repository productRepository;
+    private final Users_Repository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long idleEvictMs;
+    private final Path journalFile;
+    private final Path flushingFile;
+
+    private final ConcurrentHashMap<Integer, UserCart> carts = new ConcurrentHashMap<>();
+    private final Object journalLock = new Object();
+    private BufferedWriter journal;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedCarts = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong mutations = new AtomicLong();
+
+    public CartWriteBehindStore(Cart_Repository cartRepository,
+                                Product_Repository productRepository,
+                                Users_Repository userRepository,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${cart.write-behind.enabled:false}") boolean enabled,
+                                @Value("${cart.write-behind.idle-evict-ms:600000}") long idleEvictMs,
+                                @Value("${cart.write-behind.journal:cart-journal/cart.journal}") String journalPath) {
+        this.cartRepository = cartRepository;
+        this.productRepository = productRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.idleEvictMs = idleEvictMs;
+        this.journalFile = Paths.get(journalPath);
+        this.flushingFile = journalFile.resolveSibling(journalFile.getFileName() + ".flushing");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // --- Operaciones del carrito ---
+
+    /**
+     * Lineas actuales del carrito del usuario, cargandolo de la tabla si no esta en memoria.
+     */
+    public List<CartLine> getLines(int userId) {
+        UserCart cart = cart(userId);
+        synchronized (cart) {
+            cart.touch();
+            List<CartLine> lines = new ArrayList<>(cart.size);
+            for (int i = 0; i < cart.size; i++) {
+                lines.add(new CartLine(cart.cartItemId(i), cart.productIds[i], cart.quantities[i],
+                        cart.unitPrices[i], cart.priceChanged[i]));
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * Cantidad del producto en el carrito del usuario, 0 si no esta.
+     */
+    public int getQuantity(int userId, int productId) {
+        UserCart cart = cart(userId);
+        synchronized (cart) {
+            int index = cart.indexOf(productId);
+            return index < 0 ? 0 : cart.quantities[index];
+        }
+    }
+
+    /**
+     * Suma cantidad a un producto del carrito si el total no supera el maximo indicado. La linea
+     * guarda el precio vigente y pierde la marca de precio cambiado, como en la tabla.
+     * @return Nueva cantidad, o -1 si superaria el maximo (el carrito no cambia).
+     */
+    public int addQuantity(int userId, int productId, int quantity, int maxQuantity, BigDecimal price) {
+        UserCart cart = cart(userId);
+        synchronized (cart) {
+            int index = cart.indexOf(productId);
+            int newQuantity = (index < 0 ? 0 : cart.quantities[index]) + quantity;
+            if (newQuantity > maxQuantity) return -1;
+            cart.set(productId, newQuantity, price, false);
+            journalLine(userId, productId, newQuantity, price, false);
+            return newQuantity;
+        }
+    }
+
+    /**
+     * Fija la cantidad de un producto del carrito con el precio vigente, que el usuario ve al
+     * modificar la linea.
+     */
+    public void setQuantity(int userId, int productId, int quantity, BigDecimal price) {
+        UserCart cart = cart(userId);
+        synchronized (cart) {
+            cart.set(productId, quantity, price, false);
+            journalLine(userId, productId, quantity, price, false);
+        }
+    }
+
+    /**
+     * Quita un producto del carrito.
+     */
+    public void removeLine(int userId, int productId) {
+        setQuantity(userId, productId, 0, null);
+    }
+
+    /**
+     * Aplica un cambio de precio a las lineas del producto en los carritos cargados en memoria:
+     * guardan el precio nuevo y quedan marcadas como cambiadas, igual que
+     * Cart_Repository.repriceProduct en la tabla. Se marcan pendientes para que un volcado en
+     * curso con el precio anterior no deje la fila desactualizada.
+     * @return Cantidad de lineas actualizadas.
+     */
+    public int repriceProduct(int productId, BigDecimal price) {
+        if (!enabled || price == null) return 0;
+        int updated = 0;
+        for (Map.Entry<Integer, UserCart> entry : carts.entrySet()) {
+            UserCart cart = entry.getValue();
+            synchronized (cart) {
+                int index = cart.indexOf(productId);
+                if (cart.evicted || index < 0) continue;
+                BigDecimal current = cart.unitPrices[index];
+                if (current != null && current.compareTo(price) == 0) continue;
+                cart.set(productId, cart.quantities[index], price, true);
+                journalLine(entry.getKey(), productId, cart.quantities[index], price, true);
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Indica si el carrito del usuario esta cargado en memoria (es decir, tuvo actividad reciente).
+     */
+    public boolean isLoaded(int userId) {
+        return carts.containsKey(userId);
+    }
+
+    /**
+     * Resuelve un ID de item del carrito (real o provisional) al producto de la linea.
+     * @return ID del producto, o null si la linea no esta en el carrito del usuario.
+     */
+    public Integer findProductId(int userId, int cartItemId) {
+        UserCart cart = cart(userId);
+        synchronized (cart) {
+            for (int i = 0; i < cart.size; i++) {
+                if (cart.cartIds[i] == cartItemId || -cart.productIds[i] == cartItemId) {
+                    return cart.productIds[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Descarta el carrito en memoria sin volcarlo, cuando la transaccion actual confirme.
+     * Se usa cuando las filas del usuario se eliminan directamente en la tabla (checkout,
+     * vaciado): si la transaccion se revierte, el carrito en memoria sigue intacto.
+     *
+     * Debe llamarse antes del DELETE: marca el carrito como en vaciado, y un volcado en curso
+     * que vea la marca revierte su transaccion en lugar de reinsertar las lineas eliminadas.
+     */
+    public void clearAfterCommit(int userId) {
+        if (!enabled) return;
+        UserCart cart = carts.get(userId);
+        if (cart != null) {
+            synchronized (cart) {
+                cart.clearing = true;
+            }
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict(userId);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED && cart != null) {
+                    synchronized (cart) {
+                        cart.clearing = false;
+                    }
+                }
+            }
+        });
+    }
+
+    private void evict(int userId) {
+        UserCart cart = carts.remove(userId);
+        if (cart != null) {
+            synchronized (cart) {
+                cart.evicted = true;
+            }
+        }
+        journal("C," + userId);
+    }
+
+    /**
+     * Vuelca los cambios pendientes del usuario y lo quita de memoria, para que una operacion
+     * masiva sobre la tabla cart vea el estado real del carrito.
+     */
+    public void flushAndEvict(int userId) {
+        if (!enabled) return;
+        UserCart cart = carts.get(userId);
+        if (cart == null) return;
+        flushCart(userId, cart);
+        synchronized (cart) {
+            if (!cart.dirty) {
+                carts.remove(userId, cart);
+                cart.evicted = true;
+            }
+        }
+    }
+
+    // --- Volcado a la tabla ---
+
+    /**
+     * Vuelca periodicamente todos los carritos modificados y libera los inactivos.
+     */
+    @Scheduled(fixedDelayString = "${cart.write-behind.flush-interval-ms:5000}")
+    public void flushAll() {
+        if (!enabled) return;
+        rotateJournal();
+
+        boolean allFlushed = true;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, UserCart> entry : carts.entrySet()) {
+            UserCart cart = entry.getValue();
+            if (cart.dirty && !flushCart(entry.getKey(), cart)) {
+                allFlushed = false;
+            }
+            synchronized (cart) {
+                if (!cart.dirty && now - cart.lastAccess > idleEvictMs) {
+                    carts.remove(entry.getKey(), cart);
+                    cart.evicted = true;
+                }
+            }
+        }
+        flushes.incrementAndGet();
+
+        // Los cambios del journal rotado ya estan en la tabla
+        if (allFlushed) {
+            try {
+                Files.deleteIfExists(flushingFile);
+            } catch (IOException e) {
+                logger.warn("No se pudo eliminar el journal volcado: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sincroniza las filas del usuario con el estado en memoria en una sola transaccion:
+     * inserta lineas nuevas, actualiza cantidades y elimina lineas quitadas.
+     * @return false si el volcado fallo (el carrito sigue pendiente).
+     */
+    private boolean flushCart(int userId, UserCart cart) {
+        int[] productIds;
+        int[] quantities;
+        BigDecimal[] unitPrices;
+        boolean[] priceChanged;
+        long version;
+        synchronized (cart) {
+            if (!cart.dirty || cart.evicted || cart.clearing) return true;
+            productIds = Arrays.copyOf(cart.productIds, cart.size);
+            quantities = Arrays.copyOf(cart.quantities, cart.size);
+            unitPrices = Arrays.copyOf(cart.unitPrices, cart.size);
+            priceChanged = Arrays.copyOf(cart.priceChanged, cart.size);
+            version = cart.version;
+        }
+
+        try {
+            Map<Integer, Integer> savedIds = transactionTemplate.execute(status -> {
+                Map<Integer, Integer> written = writeCart(userId, productIds, quantities, unitPrices, priceChanged);
+                // Un vaciado que empezo durante el volcado ya elimino (o eliminara) las filas:
+                // confirmar reinsertaria lineas de un carrito que ya no existe
+                synchronized (cart) {
+                    if (cart.clearing || cart.evicted) {
+                        status.setRollbackOnly();
+                        return null;
+                    }
+                }
+                return written;
+            });
+            if (savedIds == null) return true;
+
+            synchronized (cart) {
+                for (Map.Entry<Integer, Integer> saved : savedIds.entrySet()) {
+                    int index = cart.indexOf(saved.getKey());
+                    if (index >= 0) cart.cartIds[index] = saved.getValue();
+                }
+                if (cart.version == version) cart.dirty = false;
+            }
+            flushedCarts.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            failedFlushes.incrementAndGet();
+            logger.error("Error al volcar el carrito del usuario {}: {}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    private Map<Integer, Integer> writeCart(int userId, int[] productIds, int[] quantities,
+                                            BigDecimal[] unitPrices, boolean[] priceChanged) {
+        Map<Integer, Cart> rows = new HashMap<>();
+        List<Cart> stale = new ArrayList<>();
+        for (Cart row : cartRepository.findByUserId(userId)) {
+            if (rows.putIfAbsent(row.getProduct().getId(), row) != null) stale.add(row);
+        }
+
+        // Productos eliminados del catalogo mientras estaban en el carrito
+        Set<Integer> newProductIds = new HashSet<>();
+        for (int productId : productIds) {
+            if (!rows.containsKey(productId)) newProductIds.add(productId);
+        }
+        Map<Integer, Product> existing = new HashMap<>();
+        if (!newProductIds.isEmpty()) {
+            for (Product product : productRepository.findAllById(newProductIds)) existing.put(product.getId(), product);
+        }
+
+        Map<Integer, Integer> savedIds = new HashMap<>();
+        List<Cart> changed = new ArrayList<>();
+        for (int i = 0; i < productIds.length; i++) {
+            Cart row = rows.remove(productIds[i]);
+            if (row == null) {
+                Product product = existing.get(productIds[i]);
+                if (product == null) continue;
+                row = new Cart();
+                row.setUser(userRepository.getReferenceById(userId));
+                row.setProduct(product);
+                row.setQuantity(quantities[i]);
+                row.setUnitPrice(unitPrices[i] != null ? unitPrices[i] : product.getPrice());
+                row.setPriceChanged(priceChanged[i]);
+                changed.add(row);
+            } else if (row.getQuantity() != quantities[i] || row.isPriceChanged() != priceChanged[i]
+                    || !samePrice(row.getUnitPrice(), unitPrices[i])) {
+                row.setQuantity(quantities[i]);
+                if (unitPrices[i] != null) row.setUnitPrice(unitPrices[i]);
+                row.setPriceChanged(priceChanged[i]);
+                changed.add(row);
+            } else {
+                savedIds.put(productIds[i], row.getId());
+            }
+        }
+        stale.addAll(rows.values());
+
+        for (Cart row : cartRepository.saveAll(changed)) {
+            savedIds.put(row.getProduct().getId(), row.getId());
+        }
+        if (!stale.isEmpty()) {
+            cartRepository.deleteAllInBatch(stale);
+        }
+        // Cada volcado refleja cambios del usuario: renueva la actividad para la depuracion
+        if (!changed.isEmpty() || !stale.isEmpty()) {
+            cartRepository.touchByUserId(userId);
+        }
+        return savedIds;
+    }
+
+    // Un precio nulo en memoria (filas anteriores al precio guardado) no reemplaza al de la fila
+    private static boolean samePrice(BigDecimal rowPrice, BigDecimal memoryPrice) {
+        if (memoryPrice == null) return true;
+        return rowPrice != null && rowPrice.compareTo(memoryPrice) == 0;
+    }
+
+    private UserCart cart(int userId) {
+        while (true) {
+            UserCart cart = carts.computeIfAbsent(userId, this::loadCart);
+            synchronized (cart) {
+                // Un carrito expulsado mientras se esperaba el lock se vuelve a cargar
+                if (!cart.evicted) {
+                    cart.touch();
+                    return cart;
+                }
+            }
+        }
+    }
+
+    private UserCart loadCart(int userId) {
+        List<Cart> rows = cartRepository.findByUserId(userId);
+        UserCart cart = new UserCart(Math.max(4, rows.size()));
+        for (Cart row : rows) {
+            int productId = row.getProduct().getId();
+            if (cart.indexOf(productId) < 0) {
+                cart.append(productId, row.getQuantity(), row.getId(), row.getUnitPrice(), row.isPriceChanged());
+            }
+        }
+        cart.dirty = false;
+        return cart;
+    }
+
+    // --- Journal ---
+
+    private void journalLine(int userId, int productId, int quantity, BigDecimal price, boolean priceChanged) {
+        journal("S," + userId + "," + productId + "," + quantity + ","
+                + (price != null ? price.toPlainString() : "") + "," + (priceChanged ? 1 : 0));
+    }
+
+    private void journal(String entry) {
+        if (!enabled) return;
+        mutations.incrementAndGet();
+        synchronized (journalLock) {
+            try {
+                if (journal == null) {
+                    Files.createDirectories(journalFile.toAbsolutePath().getParent());
+                    journal = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                journal.write(entry);
+                journal.newLine();
+                // Llega al sistema operativo: sobrevive a la caida del proceso, no a la del equipo
+                journal.flush();
+            } catch (IOException e) {
+                logger.error("No se pudo escribir el journal del carrito: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Cierra el journal actual y lo acumula en el archivo en volcado; las mutaciones
+     * posteriores van a un journal nuevo.
+     */
+    private void rotateJournal() {
+        synchronized (journalLock) {
+            try {
+                if (journal != null) {
+                    journal.close();
+                    journal = null;
+                }
+                if (!Files.exists(journalFile)) return;
+                if (Files.exists(flushingFile)) {
+                    // Un volcado anterior fallo: se conserva su historia y se agrega la nueva
+                    Files.write(flushingFile, Files.readAllBytes(journalFile), StandardOpenOption.APPEND);
+                    Files.delete(journalFile);
+                } else {
+                    Files.move(journalFile, flushingFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                logger.error("No se pudo rotar el journal del carrito: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reaplica el journal de una ejecucion anterior que no alcanzo a volcarse.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        if (!enabled) return;
+        int replayed = replay(flushingFile) + replay(journalFile);
+        if (replayed > 0) {
+            logger.info("Journal del carrito reaplicado: {} cambios", replayed);
+            flushAll();
+        }
+    }
+
+    private int replay(Path file) {
+        if (!Files.exists(file)) return 0;
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                try {
+                    if ("S".equals(fields[0]) && (fields.length == 4 || fields.length == 6)) {
+                        // Las entradas de 4 campos son anteriores al precio guardado
+                        BigDecimal price = fields.length == 6 && !fields[4].isEmpty() ? new BigDecimal(fields[4]) : null;
+                        boolean priceChanged = fields.length == 6 && "1".equals(fields[5]);
+                        UserCart cart = cart(Integer.parseInt(fields[1]));
+                        synchronized (cart) {
+                            cart.set(Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), price, priceChanged);
+                        }
+                        count++;
+                    } else if ("C".equals(fields[0]) && fields.length == 2) {
+                        UserCart cart = carts.remove(Integer.parseInt(fields[1]));
+                        if (cart != null) cart.evicted = true;
+                        count++;
+                    }
+                } catch (NumberFormatException e) {
+                    // Linea incompleta al final del archivo por una caida durante la escritura
+                    logger.warn("Linea invalida en el journal del carrito: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("No se pudo leer el journal del carrito {}: {}", file, e.getMessage());
+        }
+        return count;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) return;
+        flushAll();
+        synchronized (journalLock) {
+            try {
+                if (journal != null) journal.close();
+            } catch (IOException e) {
+                logger.warn("No se pudo cerrar el journal del carrito: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Estado de la capa en memoria para monitoreo.
+     */
+    public Map<String, Object> getStats() {
+        int dirty = 0;
+        int lines = 0;
+        for (UserCart cart : carts.values()) {
+            if (cart.dirty) dirty++;
+            lines += cart.size;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("cartsInMemory", carts.size());
+        stats.put("linesInMemory", lines);
+        stats.put("dirtyCarts", dirty);
+        stats.put("mutations", mutations.get());
+        stats.put("flushes", flushes.get());
+        stats.put("flushedCarts", flushedCarts.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        return stats;
+    }
+
+    /**
+     * Linea del carrito: ID del item (negativo si aun no se volco), producto, cantidad, precio
+     * guardado (null en filas anteriores a ese campo) y si el precio cambio desde que se guardo.
+     */
+    public static class CartLine {
+        private final int cartItemId;
+        private final int productId;
+        private final int quantity;
+        private final BigDecimal unitPrice;
+        private final boolean priceChanged;
+
+        public CartLine(int cartItemId, int productId, int quantity, BigDecimal unitPrice, boolean priceChanged) {
+            this.cartItemId = cartItemId;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.unitPrice = unitPrice;
+            this.priceChanged = priceChanged;
+        }
+
+        public int getCartItemId() { return cartItemId; }
+
+        public int getProductId() { return productId; }
+
+        public int getQuantity() { return quantity; }
+
+        public BigDecimal getUnitPrice() { return unitPrice; }
+
+        public boolean isPriceChanged() { return priceChanged; }
+    }
+
+    /**
+     * Carrito de un usuario en arreglos paralelos. Todo acceso se sincroniza sobre la instancia.
+     */
+    private static class UserCart {
+        private int[] productIds;
+        private int[] quantities;
+        // ID de la fila en la tabla cart, 0 si la linea aun no se volco
+        private int[] cartIds;
+        private BigDecimal[] unitPrices;
+        private boolean[] priceChanged;
+        private int size;
+        private long version;
+        private boolean dirty;
+        private boolean evicted;
+        // true mientras una transaccion elimina las filas del usuario (checkout, vaciado)
+        private boolean clearing;
+        private long lastAccess = System.currentTimeMillis();
+
+        UserCart(int capacity) {
+            productIds = new int[capacity];
+            quantities = new int[capacity];
+            cartIds = new int[capacity];
+            unitPrices = new BigDecimal[capacity];
+            priceChanged = new boolean[capacity];
+        }
+
+        int indexOf(int productId) {
+            for (int i = 0; i < size; i++) {
+                if (productIds[i] == productId) return i;
+            }
+            return -1;
+        }
+
+        int cartItemId(int index) {
+            return cartIds[index] > 0 ? cartIds[index] : -productIds[index];
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        void set(int productId, int quantity, BigDecimal price, boolean changed) {
+            int index = indexOf(productId);
+            if (quantity <= 0) {
+                if (index >= 0) removeAt(index);
+            } else if (index >= 0) {
+                quantities[index] = quantity;
+                if (price != null) unitPrices[index] = price;
+                priceChanged[index] = changed;
+            } else {
+                append(productId, quantity, 0, price, changed);
+            }
+            version++;
+            dirty = true;
+        }
+
+        void append(int productId, int quantity, int cartId, BigDecimal price, boolean changed) {
+            if (size == productIds.length) {
+                int capacity = size * 2;
+                productIds = Arrays.copyOf(productIds, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                cartIds = Arrays.copyOf(cartIds, capacity);
+                unitPrices = Arrays.copyOf(unitPrices, capacity);
+                priceChanged = Arrays.copyOf(priceChanged, capacity);
+            }
+            productIds[size] = productId;
+            quantities[size] = quantity;
+            cartIds[size] = cartId;
+            unitPrices[size] = price;
+            priceChanged[size] = changed;
+            size++;
+        }
+
+        private void removeAt(int index) {
+            int moved = size - index - 1;
+            System.arraycopy(productIds, index + 1, productIds, index, moved);
+            System.arraycopy(quantities, index + 1, quantities, index, moved);
+            System.arraycopy(cartIds, index + 1, cartIds, index, moved);
+            System.arraycopy(unitPrices, index + 1, unitPrices, index, moved);
+            System.arraycopy(priceChanged, index + 1, priceChanged, index, moved);
+            unitPrices[--size] = null;
+        }
+    }
+}
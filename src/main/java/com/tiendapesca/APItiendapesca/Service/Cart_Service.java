@@ -1,25 +1,44 @@
 package com.tiendapesca.APItiendapesca.Service;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 import com.tiendapesca.APItiendapesca.Dtos.AddToCartRequestDTO;
 import com.tiendapesca.APItiendapesca.Dtos.CartItemRespoDTO;
+import com.tiendapesca.APItiendapesca.Dtos.CartMergeRequestDTO;
+import com.tiendapesca.APItiendapesca.Dtos.CartSummaryDTO;
+import com.tiendapesca.APItiendapesca.Dtos.CartValidationDTO;
 import com.tiendapesca.APItiendapesca.Entities.Cart;
 import com.tiendapesca.APItiendapesca.Entities.Product;
 import com.tiendapesca.APItiendapesca.Entities.Users;
+import com.tiendapesca.APItiendapesca.Events.CartChangedEvent;
 import com.tiendapesca.APItiendapesca.Repository.Cart_Repository;
 import com.tiendapesca.APItiendapesca.Repository.Product_Repository;
 import com.tiendapesca.APItiendapesca.Repository.Users_Repository;
+import com.tiendapesca.APItiendapesca.Security.AuthenticatedUserContext;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Servicio encargado de la logica de negocio del carrito de compras,
  * gestionando la persistencia, validacion de stock y pertenencia de items.
+ * Con cart.write-behind.enabled=true las lineas se leen y modifican en
+ * {@link CartWriteBehindStore} y se vuelcan a la tabla de forma diferida.
+ * El total y las unidades de cada carrito se mantienen en {@link CartSummaryCache}, y cada
+ * cambio se publica como {@link CartChangedEvent} para los clientes conectados a /cart/stream.
  */
 @Service
 public class Cart_Service {
@@ -27,34 +46,127 @@ public class Cart_Service {
     private final Cart_Repository cartRepository;
     private final Product_Repository productRepository;
     private final Users_Repository userRepository;
+    private final CartWriteBehindStore writeBehindStore;
+    private final CartSummaryCache summaryCache;
+    private final AuthenticatedUserContext userContext;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
+    private final CartValidator cartValidator;
+    private final int mergeMaxItems;
+    // Intentos de la insercion atomica antes de propagar un deadlock
+    private final int upsertMaxAttempts;
 
     @Autowired
     public Cart_Service(Cart_Repository cartRepository,
                         Product_Repository productRepository,
-                        Users_Repository userRepository) {
+                        Users_Repository userRepository,
+                        CartWriteBehindStore writeBehindStore,
+                        CartSummaryCache summaryCache,
+                        AuthenticatedUserContext userContext,
+                        ApplicationEventPublisher eventPublisher,
+                        JdbcTemplate jdbcTemplate,
+                        CartValidator cartValidator,
+                        @Value("${cart.merge.max-items:100}") int mergeMaxItems,
+                        @Value("${cart.upsert.max-attempts:10}") int upsertMaxAttempts) {
         this.cartRepository = cartRepository;
         this.productRepository = productRepository;
         this.userRepository = userRepository;
+        this.writeBehindStore = writeBehindStore;
+        this.summaryCache = summaryCache;
+        this.userContext = userContext;
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
+        this.cartValidator = cartValidator;
+        this.mergeMaxItems = mergeMaxItems;
+        this.upsertMaxAttempts = upsertMaxAttempts;
     }
 
     /**
      * Agrega un producto al carrito. Si el producto ya existe para el usuario,
      * incrementa la cantidad actual. Valida disponibilidad de stock antes de guardar.
+     * La escritura es una sola sentencia atomica (ver {@link Cart_Repository#addQuantity}),
+     * por lo que no se declara una transaccion que la envuelva: asi puede reintentarse.
      * * @param user Usuario autenticado.
      * @param request DTO con el ID del producto y la cantidad a añadir.
      */
-    @Transactional
     public void addProductToCart(Users user, AddToCartRequestDTO request) {
         validateUserAndRequest(user, request);
         Product product = getProductById(request.getProductId());
 
-        Optional<Cart> existingCartItem = cartRepository.findByUserAndProduct(user, product);
+        if (writeBehindStore.isEnabled()) {
+            int newQuantity = writeBehindStore.addQuantity(
+                    user.getId(), product.getId(), request.getQuantity(), product.getStock(), product.getPrice());
+            if (newQuantity < 0) {
+                throw insufficientStock(product);
+            }
+        } else if (upsertQuantity(user.getId(), product.getId(), request.getQuantity()) == 0) {
+            throw insufficientStock(product);
+        }
+        summaryCache.applyAfterCommit(user.getId(), request.getQuantity(), product.getPrice());
+        publishChange(user.getId(), CartChangedEvent.Type.ITEM_CHANGED, product.getId(), request.getQuantity());
+    }
 
-        if (existingCartItem.isPresent()) {
-            updateExistingCartItem(existingCartItem.get(), request.getQuantity(), product);
-        } else {
-            validateStock(product, request.getQuantity());
-            createNewCartItem(user, product, request.getQuantity());
+    /**
+     * Fusiona (MERGE) o reemplaza (REPLACE) el carrito del usuario con un carrito completo,
+     * por ejemplo el carrito de invitado al iniciar sesion. Los productos se cargan en una sola
+     * consulta y el stock se valida para todas las lineas antes de escribir: si alguna falla
+     * no se modifica nada. Las lineas se escriben con sentencias por lotes.
+     * * @param user Usuario autenticado.
+     * @param request DTO con el modo y las lineas; los productos repetidos se suman.
+     */
+    @Transactional
+    public void mergeCart(Users user, CartMergeRequestDTO request) {
+        validateUser(user);
+        Map<Integer, Integer> incoming = collectMergeItems(request);
+        Map<Integer, Product> products = getProductsById(incoming.keySet());
+        boolean replace = request.getMode() == CartMergeRequestDTO.Mode.REPLACE;
+        summaryCache.invalidateAfterCommit(user.getId());
+        publishChange(user.getId(), CartChangedEvent.Type.RELOAD, null, 0);
+
+        if (writeBehindStore.isEnabled()) {
+            mergeInMemory(user.getId(), incoming, products, replace);
+            return;
+        }
+
+        // productId -> {id del item, cantidad}
+        Map<Integer, int[]> existing = new HashMap<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (Object[] row : cartRepository.findLinesByUserId(user.getId())) {
+            int cartItemId = (Integer) row[0];
+            int productId = (Integer) row[1];
+            if (existing.containsKey(productId) || (replace && !incoming.containsKey(productId))) {
+                deletes.add(new Object[]{cartItemId});
+            } else {
+                existing.put(productId, new int[]{cartItemId, (Integer) row[2]});
+            }
+        }
+
+        Map<Integer, Integer> finalQuantities = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> item : incoming.entrySet()) {
+            int[] line = existing.get(item.getKey());
+            int current = line == null || replace ? 0 : line[1];
+            finalQuantities.put(item.getKey(), current + item.getValue());
+        }
+        validateStock(products, finalQuantities);
+
+        List<Object[]> upserts = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> item : finalQuantities.entrySet()) {
+            int[] line = existing.get(item.getKey());
+            if (line == null || line[1] != item.getValue()) {
+                upserts.add(new Object[]{user.getId(), item.getKey(), item.getValue(),
+                        products.get(item.getKey()).getPrice()});
+            }
+        }
+
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM cart WHERE id = ?", deletes);
+            if (upserts.isEmpty()) cartRepository.touchByUserId(user.getId());
+        }
+        if (!upserts.isEmpty()) {
+            // Lineas nuevas y existentes en un solo lote sobre la clave unica (user_id, product_id)
+            jdbcTemplate.batchUpdate("INSERT INTO cart (user_id, product_id, quantity, unit_price, price_changed) " +
+                    "VALUES (?, ?, ?, ?, 0) ON DUPLICATE KEY UPDATE quantity = VALUES(quantity), " +
+                    "unit_price = VALUES(unit_price), price_changed = 0, date_added = NOW()", upserts);
         }
     }
 
@@ -65,6 +177,9 @@ public class Cart_Service {
      */
     public List<CartItemRespoDTO> getCartItems(Integer userId) {
         validateUserExists(userId);
+        if (writeBehindStore.isEnabled()) {
+            return toCartItems(writeBehindStore.getLines(userId));
+        }
         return cartRepository.findCartItemsByUserId(userId);
     }
 
@@ -77,13 +192,37 @@ public class Cart_Service {
      */
     @Transactional
     public void updateCartItemQuantity(Users user, Integer cartItemId, Integer quantity) {
+        if (writeBehindStore.isEnabled()) {
+            int productId = resolveProductId(user, cartItemId);
+            int previousQuantity = writeBehindStore.getQuantity(user.getId(), productId);
+            if (quantity > 0) {
+                Product product = getProductById(productId);
+                validateStock(product, quantity);
+                writeBehindStore.setQuantity(user.getId(), productId, quantity, product.getPrice());
+                summaryCache.applyAfterCommit(user.getId(), quantity - previousQuantity, product.getPrice());
+                publishChange(user.getId(), CartChangedEvent.Type.ITEM_CHANGED, productId, quantity - previousQuantity);
+            } else {
+                writeBehindStore.removeLine(user.getId(), productId);
+                summaryCache.invalidateAfterCommit(user.getId());
+                publishChange(user.getId(), CartChangedEvent.Type.ITEM_REMOVED, productId, -previousQuantity);
+            }
+            return;
+        }
+
         Cart cartItem = getCartItemById(cartItemId);
         validateUserOwnership(user, cartItem);
+        int previousQuantity = cartItem.getQuantity();
 
         if (quantity <= 0) {
             cartRepository.delete(cartItem);
+            cartRepository.touchByUserId(user.getId());
+            summaryCache.applyAfterCommit(user.getId(), -previousQuantity, cartItem.getProduct().getPrice());
+            publishChange(user.getId(), CartChangedEvent.Type.ITEM_REMOVED, cartItem.getProduct().getId(), -previousQuantity);
         } else {
             updateItemQuantity(cartItem, quantity);
+            summaryCache.applyAfterCommit(user.getId(), quantity - previousQuantity, cartItem.getProduct().getPrice());
+            publishChange(user.getId(), CartChangedEvent.Type.ITEM_CHANGED, cartItem.getProduct().getId(),
+                    quantity - previousQuantity);
         }
     }
 
@@ -94,19 +233,37 @@ public class Cart_Service {
      */
     @Transactional
     public void removeCartItem(Users user, Integer cartItemId) {
+        if (writeBehindStore.isEnabled()) {
+            int productId = resolveProductId(user, cartItemId);
+            int previousQuantity = writeBehindStore.getQuantity(user.getId(), productId);
+            writeBehindStore.removeLine(user.getId(), productId);
+            summaryCache.invalidateAfterCommit(user.getId());
+            publishChange(user.getId(), CartChangedEvent.Type.ITEM_REMOVED, productId, -previousQuantity);
+            return;
+        }
+
         Cart cartItem = getCartItemById(cartItemId);
         validateUserOwnership(user, cartItem);
         cartRepository.delete(cartItem);
+        cartRepository.touchByUserId(user.getId());
+        summaryCache.applyAfterCommit(user.getId(), -cartItem.getQuantity(), cartItem.getProduct().getPrice());
+        publishChange(user.getId(), CartChangedEvent.Type.ITEM_REMOVED, cartItem.getProduct().getId(),
+                -cartItem.getQuantity());
     }
 
     /**
-     * Elimina todos los registros del carrito asociados a un usuario.
+     * Elimina todos los registros del carrito asociados a un usuario con una sola sentencia,
+     * sin importar la cantidad de items.
      * * @param user Usuario autenticado.
      */
     @Transactional
     public void clearCart(Users user) {
         validateUser(user);
-        cartRepository.deleteByUser(user);
+        // Antes del DELETE, para que un volcado en curso no reinserte las lineas
+        writeBehindStore.clearAfterCommit(user.getId());
+        cartRepository.deleteByUserId(user.getId());
+        summaryCache.clearAfterCommit(user.getId());
+        publishChange(user.getId(), CartChangedEvent.Type.CLEARED, null, 0);
     }
 
     /**
@@ -115,13 +272,66 @@ public class Cart_Service {
      * * @param user Usuario autenticado.
      * @return Suma total como BigDecimal.
      */
-    @Transactional(readOnly = true)
     public BigDecimal calculateCartTotal(Users user) {
+        return getCartSummary(user).getTotal();
+    }
+
+    /**
+     * Obtiene el total y la cantidad de unidades del carrito. Se sirve desde la cache;
+     * solo se consulta la base de datos la primera vez o tras un cambio de precios.
+     * * @param user Usuario autenticado.
+     * @return Resumen del carrito.
+     */
+    @Transactional(readOnly = true)
+    public CartSummaryDTO getCartSummary(Users user) {
+        validateUser(user);
+        CartSummaryDTO cached = summaryCache.get(user.getId());
+        if (cached != null) {
+            return cached;
+        }
+
+        long version = summaryCache.beginLoad(user.getId());
+        List<CartItemRespoDTO> items = writeBehindStore.isEnabled()
+                ? toCartItems(writeBehindStore.getLines(user.getId()))
+                : cartRepository.findCartItemsByUserId(user.getId());
+        BigDecimal total = BigDecimal.ZERO;
+        int itemCount = 0;
+        for (CartItemRespoDTO item : items) {
+            total = total.add(item.getUnitPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+            itemCount += item.getQuantity();
+        }
+        CartSummaryDTO summary = new CartSummaryDTO(total, itemCount);
+        summaryCache.put(user.getId(), summary, version);
+        return summary;
+    }
+
+    /**
+     * Revisa el carrito antes del checkout y devuelve de una vez todos los productos sin stock,
+     * eliminados o con precio cambiado. Aplica las mismas reglas que la creacion de la orden.
+     * * @param user Usuario autenticado.
+     * @return Resultado de la validacion con el subtotal a precios actuales.
+     */
+    @Transactional(readOnly = true)
+    public CartValidationDTO validateCart(Users user) {
         validateUser(user);
-        return cartRepository.findCartItemsByUserId(user.getId())
-                .stream()
-                .map(item -> item.getUnitPrice().multiply(BigDecimal.valueOf(item.getQuantity())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return cartValidator.validate(user.getId()).toDto();
+    }
+
+    /**
+     * Actualiza el precio guardado en todas las lineas de carrito de un producto cuyo precio
+     * cambio, marcandolas para que el cliente vea el cambio. Es una sola sentencia masiva;
+     * con escritura diferida tambien se actualizan las lineas de los carritos en memoria.
+     * * @param productId Identificador del producto.
+     * @param price Nuevo precio del producto.
+     * @return Cantidad de lineas actualizadas.
+     */
+    @Transactional
+    public int repriceProduct(int productId, BigDecimal price) {
+        if (price == null) {
+            return 0;
+        }
+        writeBehindStore.repriceProduct(productId, price);
+        return cartRepository.repriceProduct(productId, price);
     }
 
     // --- Metodos Auxiliares ---
@@ -152,38 +362,86 @@ public class Cart_Service {
      */
     private void validateStock(Product product, int quantity) {
         if (product.getStock() < quantity) {
-            throw new ResponseStatusException(
-                    HttpStatus.BAD_REQUEST,
-                    String.format("No hay suficiente stock para %s. Stock disponible: %d",
-                            product.getName(), product.getStock()));
+            throw insufficientStock(product);
         }
     }
 
     /**
-     * Actualiza la cantidad de un registro existente sumando la cantidad adicional.
+     * Verifica el stock de varias lineas a la vez; el error 400 lista todos los productos sin stock.
      */
-    private void updateExistingCartItem(Cart cartItem, int additionalQuantity, Product product) {
-        int newQuantity = cartItem.getQuantity() + additionalQuantity;
-        validateStock(product, newQuantity);
-        cartItem.setQuantity(newQuantity);
-        cartRepository.save(cartItem);
+    private void validateStock(Map<Integer, Product> products, Map<Integer, Integer> quantities) {
+        StringJoiner errors = new StringJoiner("; ");
+        for (Map.Entry<Integer, Integer> item : quantities.entrySet()) {
+            Product product = products.get(item.getKey());
+            if (product.getStock() < item.getValue()) {
+                errors.add(insufficientStock(product).getReason());
+            }
+        }
+        if (errors.length() > 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, errors.toString());
+        }
     }
 
     /**
-     * Crea e inserta un nuevo registro en la tabla de carrito.
+     * Construye la excepcion 400 de stock insuficiente para el producto.
      */
-    private void createNewCartItem(Users user, Product product, int quantity) {
-        Cart newCartItem = new Cart();
-        newCartItem.setUser(user);
-        newCartItem.setProduct(product);
-        newCartItem.setQuantity(quantity);
-        cartRepository.save(newCartItem);
+    private ResponseStatusException insufficientStock(Product product) {
+        return new ResponseStatusException(
+                HttpStatus.BAD_REQUEST,
+                String.format("No hay suficiente stock para %s. Stock disponible: %d",
+                        product.getName(), product.getStock()));
     }
 
     /**
-     * Valida la existencia de un usuario en la base de datos.
+     * Publica un cambio del carrito; los clientes conectados lo reciben al confirmar la transaccion.
+     */
+    private void publishChange(int userId, CartChangedEvent.Type type, Integer productId, int itemDelta) {
+        eventPublisher.publishEvent(new CartChangedEvent(userId, type, productId, itemDelta));
+    }
+
+    /**
+     * Inserta o incrementa la linea del carrito con la sentencia atomica del repositorio.
+     * Dos inserciones simultaneas de la misma linea pueden terminar en un deadlock de InnoDB
+     * (cada una bloquea el hueco del indice unico); la perdedora se revierte y se reintenta,
+     * y en el reintento ya ve la linea creada por la otra. Con muchas solicitudes simultaneas
+     * sobre la misma linea nueva puede perder mas de una vez, por eso cada reintento espera un
+     * tiempo aleatorio creciente para no volver a chocar con las demas.
+     * @return Filas afectadas; 0 si el stock no alcanza.
+     */
+    private int upsertQuantity(int userId, int productId, int quantity) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return cartRepository.addQuantity(userId, productId, quantity);
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= upsertMaxAttempts) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(1, 5L * attempt + 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Al modificar una linea el usuario ve el precio vigente: se guarda y se quita la marca de cambio.
+     */
+    private void acceptCurrentPrice(Cart cartItem, Product product) {
+        cartItem.setUnitPrice(product.getPrice());
+        cartItem.setPriceChanged(false);
+    }
+
+    /**
+     * Valida la existencia de un usuario en la base de datos. Si es el usuario autenticado
+     * de la solicitud, JWT_Filter ya lo cargo y no se vuelve a consultar.
      */
     private void validateUserExists(Integer userId) {
+        if (userContext.isAuthenticatedAs(userId)) {
+            return;
+        }
         if (!userRepository.existsById(userId)) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuario no encontrado");
         }
@@ -224,6 +482,124 @@ public class Cart_Service {
     private void updateItemQuantity(Cart cartItem, int quantity) {
         validateStock(cartItem.getProduct(), quantity);
         cartItem.setQuantity(quantity);
+        acceptCurrentPrice(cartItem, cartItem.getProduct());
         cartRepository.save(cartItem);
+        cartRepository.touchByUserId(cartItem.getUser().getId());
+    }
+
+    /**
+     * Resuelve el item del carrito en memoria al producto de la linea. Si el ID no esta en el
+     * carrito del usuario se consulta la tabla para responder 403 o 404 como sin la capa en memoria.
+     */
+    private int resolveProductId(Users user, Integer cartItemId) {
+        validateUser(user);
+        Integer productId = writeBehindStore.findProductId(user.getId(), cartItemId);
+        if (productId != null) {
+            return productId;
+        }
+        if (cartItemId > 0) {
+            validateUserOwnership(user, getCartItemById(cartItemId));
+        }
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Item del carrito no encontrado");
+    }
+
+    /**
+     * Convierte las lineas en memoria en DTOs, cargando los productos en una sola consulta.
+     * Las lineas de productos que ya no existen se omiten.
+     */
+    private List<CartItemRespoDTO> toCartItems(List<CartWriteBehindStore.CartLine> lines) {
+        if (lines.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Integer> productIds = new ArrayList<>(lines.size());
+        for (CartWriteBehindStore.CartLine line : lines) {
+            productIds.add(line.getProductId());
+        }
+        Map<Integer, Product> products = new HashMap<>();
+        for (Product product : productRepository.findAllById(productIds)) {
+            products.put(product.getId(), product);
+        }
+
+        List<CartItemRespoDTO> items = new ArrayList<>(lines.size());
+        for (CartWriteBehindStore.CartLine line : lines) {
+            Product product = products.get(line.getProductId());
+            if (product == null) continue;
+            // Como en la consulta de la tabla: precio guardado, o el actual si la linea no lo tiene
+            BigDecimal unitPrice = line.getUnitPrice() != null ? line.getUnitPrice() : product.getPrice();
+            items.add(new CartItemRespoDTO(line.getCartItemId(), product.getId(), product.getName(),
+                    product.getImage_url(), product.getBrand(), line.getQuantity(), unitPrice, line.isPriceChanged()));
+        }
+        return items;
+    }
+
+    /**
+     * Valida las lineas de una fusion de carrito y suma las cantidades de productos repetidos.
+     */
+    private Map<Integer, Integer> collectMergeItems(CartMergeRequestDTO request) {
+        if (request == null || request.getItems() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El carrito es requerido");
+        }
+        if (request.getItems().size() > mergeMaxItems) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "El carrito no puede tener mas de " + mergeMaxItems + " lineas");
+        }
+        if (request.getMode() == null) {
+            request.setMode(CartMergeRequestDTO.Mode.MERGE);
+        }
+
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        for (AddToCartRequestDTO item : request.getItems()) {
+            if (item == null || item.getProductId() == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El ID del producto es requerido");
+            }
+            if (item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La cantidad debe ser mayor a cero");
+            }
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    /**
+     * Carga varios productos en una sola consulta o lanza excepcion 404 con los IDs inexistentes.
+     */
+    private Map<Integer, Product> getProductsById(Collection<Integer> productIds) {
+        Map<Integer, Product> products = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return products;
+        }
+        for (Product product : productRepository.findAllById(productIds)) {
+            products.put(product.getId(), product);
+        }
+        if (products.size() < productIds.size()) {
+            List<Integer> missing = new ArrayList<>(productIds);
+            missing.removeAll(products.keySet());
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Productos no encontrados: " + missing);
+        }
+        return products;
+    }
+
+    /**
+     * Aplica una fusion de carrito sobre la capa en memoria.
+     */
+    private void mergeInMemory(int userId, Map<Integer, Integer> incoming,
+                               Map<Integer, Product> products, boolean replace) {
+        Map<Integer, Integer> finalQuantities = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> item : incoming.entrySet()) {
+            int current = replace ? 0 : writeBehindStore.getQuantity(userId, item.getKey());
+            finalQuantities.put(item.getKey(), current + item.getValue());
+        }
+        validateStock(products, finalQuantities);
+
+        if (replace) {
+            for (CartWriteBehindStore.CartLine line : writeBehindStore.getLines(userId)) {
+                if (!incoming.containsKey(line.getProductId())) {
+                    writeBehindStore.removeLine(userId, line.getProductId());
+                }
+            }
+        }
+        for (Map.Entry<Integer, Integer> item : finalQuantities.entrySet()) {
+            writeBehindStore.setQuantity(userId, item.getKey(), item.getValue(), products.get(item.getKey()).getPrice());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,220 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Entities.Product;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Copia inmutable del catalogo completo, con los productos en un arreglo ordenado por ID e
+ * indices secundarios por categoria, marca y precio. Los indices guardan posiciones del arreglo
+ * de productos, por lo que ordenar posiciones equivale a ordenar por ID.
+ *
+ * Nunca se modifica despues de construirse: varios hilos la leen sin bloqueos y los cambios se
+ * aplican construyendo una copia nueva (ver CatalogSnapshotHolder). Los productos son entidades
+ * desconectadas de solo lectura.
+ */
+public final class CatalogSnapshot {
+
+    private static final int[] NONE = new int[0];
+
+    private final Product[] products;
+    private final int[] ids;
+    private final Map<Integer, int[]> byCategory;
+    private final Map<String, int[]> byBrand;
+    // Posiciones ordenadas por precio y los precios en el mismo orden, para buscar rangos
+    private final int[] byPrice;
+    private final BigDecimal[] sortedPrices;
+    private final long version;
+    private final LocalDateTime builtAt;
+
+    /**
+     * @param products Productos del catalogo ordenados por ID.
+     * @param version Numero de la copia, creciente.
+     */
+    public CatalogSnapshot(List<Product> products, long version) {
+        this.products = products.toArray(new Product[0]);
+        this.ids = new int[this.products.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.products[i].getId();
+        }
+
+        Map<Integer, List<Integer>> categories = new HashMap<>();
+        Map<String, List<Integer>> brands = new HashMap<>();
+        List<Integer> priced = new ArrayList<>(ids.length);
+        for (int i = 0; i < this.products.length; i++) {
+            Product product = this.products[i];
+            if (product.getCategorie() != null) {
+                categories.computeIfAbsent(product.getCategorie().getId(), id -> new ArrayList<>()).add(i);
+            }
+            String brand = brandKey(product.getBrand());
+            if (brand != null) {
+                brands.computeIfAbsent(brand, key -> new ArrayList<>()).add(i);
+            }
+            if (product.getPrice() != null) {
+                priced.add(i);
+            }
+        }
+        this.byCategory = toArrays(categories);
+        this.byBrand = toArrays(brands);
+
+        priced.sort(Comparator.comparing((Integer i) -> this.products[i].getPrice()).thenComparing(i -> i));
+        this.byPrice = new int[priced.size()];
+        this.sortedPrices = new BigDecimal[priced.size()];
+        for (int i = 0; i < byPrice.length; i++) {
+            byPrice[i] = priced.get(i);
+            sortedPrices[i] = this.products[byPrice[i]].getPrice();
+        }
+
+        this.version = version;
+        this.builtAt = LocalDateTime.now();
+    }
+
+    /**
+     * Producto por ID o null si no existe.
+     */
+    public Product get(int productId) {
+        int position = Arrays.binarySearch(ids, productId);
+        return position >= 0 ? products[position] : null;
+    }
+
+    /**
+     * Pagina del catalogo completo ordenado por ID.
+     */
+    public Page<Product> page(Pageable pageable) {
+        int from = (int) Math.min(pageable.getOffset(), products.length);
+        int to = Math.min(from + pageable.getPageSize(), products.length);
+        return new PageImpl<>(Arrays.asList(products).subList(from, to), pageable, products.length);
+    }
+
+    /**
+     * Productos de una categoria ordenados por ID.
+     */
+    public List<Product> byCategory(int categoryId) {
+        return toProducts(byCategory.getOrDefault(categoryId, NONE), 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Filtra el catalogo; los criterios nulos no filtran. Recorre solo el indice mas selectivo
+     * y verifica el resto de criterios sobre cada candidato.
+     * @return Pagina de productos ordenados por ID.
+     */
+    public Page<Product> filter(Integer categoryId, String brand, BigDecimal minPrice, BigDecimal maxPrice,
+                                boolean inStock, Pageable pageable) {
+        String brandKey = brandKey(brand);
+        int[] candidates = null;
+        if (categoryId != null) {
+            candidates = byCategory.getOrDefault(categoryId, NONE);
+        }
+        if (brandKey != null) {
+            int[] brandPositions = byBrand.getOrDefault(brandKey, NONE);
+            if (candidates == null || brandPositions.length < candidates.length) candidates = brandPositions;
+        }
+        if (minPrice != null || maxPrice != null) {
+            int from = minPrice != null ? lowerBound(minPrice) : 0;
+            int to = maxPrice != null ? upperBound(maxPrice) : byPrice.length;
+            if (candidates == null || to - from < candidates.length) {
+                // Las posiciones del rango de precios se ordenan para devolver por ID
+                candidates = from < to ? Arrays.copyOfRange(byPrice, from, to) : NONE;
+                Arrays.sort(candidates);
+            }
+        }
+
+        int[] matches = new int[candidates != null ? candidates.length : products.length];
+        int count = 0;
+        int total = candidates != null ? candidates.length : products.length;
+        for (int i = 0; i < total; i++) {
+            int position = candidates != null ? candidates[i] : i;
+            if (matches(products[position], categoryId, brandKey, minPrice, maxPrice, inStock)) {
+                matches[count++] = position;
+            }
+        }
+
+        int from = (int) Math.min(pageable.getOffset(), count);
+        int to = Math.min(from + pageable.getPageSize(), count);
+        return new PageImpl<>(toProducts(matches, from, to), pageable, count);
+    }
+
+    private static boolean matches(Product product, Integer categoryId, String brandKey, BigDecimal minPrice,
+                                   BigDecimal maxPrice, boolean inStock) {
+        if (categoryId != null && (product.getCategorie() == null || product.getCategorie().getId() != categoryId)) {
+            return false;
+        }
+        if (brandKey != null && !brandKey.equals(brandKey(product.getBrand()))) {
+            return false;
+        }
+        if (minPrice != null || maxPrice != null) {
+            BigDecimal price = product.getPrice();
+            if (price == null) return false;
+            if (minPrice != null && price.compareTo(minPrice) < 0) return false;
+            if (maxPrice != null && price.compareTo(maxPrice) > 0) return false;
+        }
+        return !inStock || product.getStock() > 0;
+    }
+
+    // Primera posicion del indice de precios con precio >= min
+    private int lowerBound(BigDecimal min) {
+        int low = 0;
+        int high = sortedPrices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedPrices[mid].compareTo(min) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    // Primera posicion del indice de precios con precio > max
+    private int upperBound(BigDecimal max) {
+        int low = 0;
+        int high = sortedPrices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedPrices[mid].compareTo(max) <= 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private List<Product> toProducts(int[] positions, int from, int to) {
+        int end = Math.min(to, positions.length);
+        List<Product> result = new ArrayList<>(Math.max(end - from, 0));
+        for (int i = from; i < end; i++) {
+            result.add(products[positions[i]]);
+        }
+        return result;
+    }
+
+    private static <K> Map<K, int[]> toArrays(Map<K, List<Integer>> index) {
+        Map<K, int[]> arrays = new HashMap<>(index.size() * 2);
+        index.forEach((key, positions) -> arrays.put(key, positions.stream().mapToInt(Integer::intValue).toArray()));
+        return arrays;
+    }
+
+    private static String brandKey(String brand) {
+        if (brand == null || brand.isBlank()) return null;
+        return brand.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public int size() {
+        return products.length;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public LocalDateTime getBuiltAt() {
+        return builtAt;
+    }
+}
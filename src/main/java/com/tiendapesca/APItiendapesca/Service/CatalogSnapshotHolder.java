@@ -0,0 +1,131 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Entities.Product;
+import com.tiendapesca.APItiendapesca.Repository.Product_Repository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Modo opcional (product.catalog.snapshot.enabled) en el que los listados y filtros del catalogo
+ * se responden desde una copia inmutable en memoria (CatalogSnapshot) sin consultar la base de
+ * datos. Pensado para catalogos de algunos miles de productos con trafico casi solo de lectura.
+ *
+ * La copia se publica en una referencia volatile: los lectores toman la copia actual sin
+ * bloqueos. Cada cambio de productos o de stock pide una reconstruccion, que se hace en un hilo
+ * aparte; los pedidos que llegan mientras se reconstruye se agrupan en una sola pasada mas.
+ */
+@Component
+public class CatalogSnapshotHolder {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSnapshotHolder.class);
+
+    private final Product_Repository productRepository;
+    private final boolean enabled;
+    private final int batchSize;
+    private final ExecutorService builder;
+
+    private volatile CatalogSnapshot snapshot;
+    // true si hay una reconstruccion programada que todavia no empezo a leer la base de datos
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastBuildMillis = 0;
+
+    public CatalogSnapshotHolder(Product_Repository productRepository,
+                                 @Value("${product.catalog.snapshot.enabled:false}") boolean enabled,
+                                 @Value("${product.catalog.snapshot.batch-size:1000}") int batchSize) {
+        this.productRepository = productRepository;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.builder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Copia actual del catalogo, o null si el modo esta desactivado o la primera copia
+     * aun no termino de construirse (en ese caso se usa la base de datos).
+     */
+    public CatalogSnapshot current() {
+        return snapshot;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        requestRebuild();
+    }
+
+    /**
+     * Pide reconstruir la copia en segundo plano. No bloquea a quien lo llama.
+     */
+    public void requestRebuild() {
+        if (!enabled) return;
+        if (pending.compareAndSet(false, true)) {
+            builder.execute(this::rebuild);
+        }
+    }
+
+    private void rebuild() {
+        // Los cambios posteriores a este punto piden otra reconstruccion
+        pending.set(false);
+        long start = System.currentTimeMillis();
+        try {
+            List<Product> products = new ArrayList<>();
+            int lastId = 0;
+            while (true) {
+                List<Product> page = productRepository.findWithCategorieAfter(lastId, PageRequest.of(0, batchSize));
+                if (page.isEmpty()) break;
+                products.addAll(page);
+                lastId = page.get(page.size() - 1).getId();
+            }
+            CatalogSnapshot previous = snapshot;
+            snapshot = new CatalogSnapshot(products, previous != null ? previous.getVersion() + 1 : 1);
+            builds.incrementAndGet();
+            lastBuildMillis = System.currentTimeMillis() - start;
+            logger.debug("Copia del catalogo construida: {} productos en {} ms", products.size(), lastBuildMillis);
+        } catch (Exception e) {
+            // Se sigue sirviendo la copia anterior hasta el proximo cambio
+            failures.incrementAndGet();
+            logger.error("Error al construir la copia del catalogo: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Estado de la copia del catalogo para monitoreo.
+     */
+    public Map<String, Object> getStats() {
+        CatalogSnapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("version", current != null ? current.getVersion() : 0);
+        stats.put("products", current != null ? current.size() : 0);
+        stats.put("builtAt", current != null ? current.getBuiltAt() : null);
+        stats.put("lastBuildMillis", lastBuildMillis);
+        stats.put("builds", builds.get());
+        stats.put("failures", failures.get());
+        stats.put("pending", pending.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+}
@@ -29,6 +29,9 @@ public class FeaturedProduct_Service {
     @Autowired
     private FeaturedProduct_Repository featuredProductRepository;
 
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
 
     @Transactional
     public void refreshFeaturedProducts() {
@@ -63,6 +66,7 @@ public class FeaturedProduct_Service {
 
             // Guardar
             featuredProductRepository.saveAll(featuredProducts);
+            catalogCache.invalidateFeaturedAfterCommit();
 
             System.out.println("Actualización completada. Productos destacados: " + featuredProducts.size());
 
@@ -78,14 +82,16 @@ public class FeaturedProduct_Service {
      */
     public List<Product> getFeaturedProducts() {
         try {
-            List<FeaturedProduct> featured = featuredProductRepository.findAllByOrderByIdDesc();
-            List<Product> products = new ArrayList<>();
+            return catalogCache.getFeatured(() -> {
+                List<FeaturedProduct> featured = featuredProductRepository.findAllByOrderByIdDesc();
+                List<Product> products = new ArrayList<>();
 
-            for (FeaturedProduct fp : featured) {
-                products.add(fp.getProduct());
-            }
+                for (FeaturedProduct fp : featured) {
+                    products.add(fp.getProduct());
+                }
 
-            return products;
+                return products;
+            });
         } catch (Exception e) {
             return Collections.emptyList();
         }
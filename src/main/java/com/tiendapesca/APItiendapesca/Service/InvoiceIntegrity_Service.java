@@ -0,0 +1,335 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Repository.Invoice_Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Verifica la consistencia entre la tabla invoice y los archivos del almacenamiento de facturas.
+ * Detecta facturas sin PDF generado, PDFs inexistentes o truncados (sin marcador %%EOF) y
+ * archivos huerfanos que no pertenecen a ninguna factura. Guarda un manifiesto con el tamaño,
+ * la fecha de modificacion y el SHA-256 de cada archivo para que las siguientes ejecuciones
+ * solo lean los archivos que cambiaron.
+ */
+@Service
+public class InvoiceIntegrity_Service {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceIntegrity_Service.class);
+    private static final Path STORAGE_DIRECTORY = Paths.get("invoices");
+    private static final Path MANIFEST_FILE = STORAGE_DIRECTORY.resolve(".manifest");
+    private static final byte[] PDF_EOF_MARKER = "%%EOF".getBytes(StandardCharsets.US_ASCII);
+    private static final int PDF_TAIL_BYTES = 1024;
+    // Cantidad maxima de ejemplos por categoria incluidos en el reporte
+    private static final int MAX_REPORTED = 100;
+
+    private final Invoice_Repository invoiceRepository;
+    private final int pageSize;
+    private final int threads;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile Map<String, Object> lastReport = new LinkedHashMap<>();
+
+    @Autowired
+    public InvoiceIntegrity_Service(Invoice_Repository invoiceRepository,
+                                    @Value("${invoice.integrity.page-size:5000}") int pageSize,
+                                    @Value("${invoice.integrity.threads:0}") int threads) {
+        this.invoiceRepository = invoiceRepository;
+        this.pageSize = pageSize;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Inicia la verificacion en segundo plano.
+     * @return false si ya hay una verificacion en ejecucion.
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("running", true);
+        report.put("startedAt", LocalDateTime.now());
+        lastReport = report;
+
+        Thread worker = new Thread(this::run, "invoice-integrity");
+        worker.setDaemon(true);
+        worker.start();
+        return true;
+    }
+
+    /**
+     * Reporte de la verificacion en curso o de la ultima ejecutada.
+     */
+    public Map<String, Object> getReport() {
+        return lastReport;
+    }
+
+    private void run() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Map<String, Object> report = scan(pool);
+            report.put("startedAt", startedAt);
+            report.put("finishedAt", LocalDateTime.now());
+            report.put("durationSeconds", Duration.between(startedAt, LocalDateTime.now()).toSeconds());
+            lastReport = report;
+        } catch (Exception e) {
+            logger.error("Error en la verificacion de facturas: {}", e.getMessage(), e);
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("running", false);
+            report.put("startedAt", startedAt);
+            report.put("error", e.getMessage());
+            lastReport = report;
+        } finally {
+            pool.shutdown();
+            running.set(false);
+        }
+    }
+
+    private Map<String, Object> scan(ExecutorService pool) throws Exception {
+        Map<String, ManifestEntry> previous = readManifest();
+        Map<String, BasicFileAttributes> files = listStorageFiles();
+
+        // Solo se leen los archivos nuevos o cuyo tamaño o fecha cambiaron desde el ultimo manifiesto
+        Map<String, ManifestEntry> manifest = new HashMap<>(files.size() * 4 / 3 + 1);
+        List<Future<ManifestEntry>> hashed = new ArrayList<>();
+        for (Map.Entry<String, BasicFileAttributes> file : files.entrySet()) {
+            String name = file.getKey();
+            long size = file.getValue().size();
+            long lastModified = file.getValue().lastModifiedTime().toMillis();
+            ManifestEntry known = previous.get(name);
+            if (known != null && known.size == size && known.lastModified == lastModified) {
+                manifest.put(name, known);
+            } else {
+                hashed.add(pool.submit(() -> hashFile(name, size, lastModified)));
+            }
+        }
+        for (Future<ManifestEntry> result : hashed) {
+            ManifestEntry entry = result.get();
+            manifest.put(entry.name, entry);
+        }
+        writeManifest(manifest);
+
+        List<String> notGenerated = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        List<String> truncated = new ArrayList<>();
+        long notGeneratedCount = 0;
+        long missingCount = 0;
+        long truncatedCount = 0;
+        long invoiceCount = 0;
+
+        // Recorrido de la tabla por clave: solo una pagina de filas en memoria
+        Set<String> referenced = new HashSet<>(files.size() * 4 / 3 + 1);
+        int lastId = 0;
+        while (true) {
+            List<Object[]> rows = invoiceRepository.findStorageInfoAfter(lastId, PageRequest.of(0, pageSize));
+            if (rows.isEmpty()) break;
+
+            for (Object[] row : rows) {
+                invoiceCount++;
+                String invoiceNumber = (String) row[1];
+                String pdfUrl = (String) row[2];
+                referenced.add(Paths.get(PdfGeneratorService.storagePath(invoiceNumber, ".xml"))
+                        .getFileName().toString());
+
+                if (pdfUrl == null) {
+                    if (notGeneratedCount++ < MAX_REPORTED) notGenerated.add(invoiceNumber);
+                    continue;
+                }
+                String fileName = Paths.get(pdfUrl).getFileName().toString();
+                referenced.add(fileName);
+                ManifestEntry entry = manifest.get(fileName);
+                if (entry == null) {
+                    if (missingCount++ < MAX_REPORTED) missing.add(invoiceNumber);
+                } else if (!entry.complete) {
+                    if (truncatedCount++ < MAX_REPORTED) truncated.add(invoiceNumber);
+                }
+            }
+            lastId = (Integer) rows.get(rows.size() - 1)[0];
+        }
+
+        List<String> orphaned = new ArrayList<>();
+        long orphanedCount = 0;
+        for (String name : files.keySet()) {
+            if (!referenced.contains(name) && orphanedCount++ < MAX_REPORTED) {
+                orphaned.add(name);
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("running", false);
+        report.put("invoices", invoiceCount);
+        report.put("files", files.size());
+        report.put("hashedFiles", hashed.size());
+        report.put("reusedChecksums", files.size() - hashed.size());
+        report.put("notGeneratedCount", notGeneratedCount);
+        report.put("missingCount", missingCount);
+        report.put("truncatedCount", truncatedCount);
+        report.put("orphanedCount", orphanedCount);
+        report.put("notGenerated", notGenerated);
+        report.put("missing", missing);
+        report.put("truncated", truncated);
+        report.put("orphaned", orphaned);
+        logger.info("Verificacion de facturas: {} facturas, {} archivos ({} leidos), faltantes {}, truncados {}, huerfanos {}",
+                invoiceCount, files.size(), hashed.size(), missingCount, truncatedCount, orphanedCount);
+        return report;
+    }
+
+    /**
+     * Lista los archivos del almacenamiento con sus atributos, sin leer su contenido.
+     * Se omiten el manifiesto, los checkpoints internos y los temporales (.tmp) de las
+     * facturas que se estan escribiendo, que no son huerfanos.
+     */
+    private Map<String, BasicFileAttributes> listStorageFiles() throws IOException {
+        Map<String, BasicFileAttributes> files = new HashMap<>();
+        if (!Files.exists(STORAGE_DIRECTORY)) return files;
+
+        Files.walkFileTree(STORAGE_DIRECTORY, EnumSet.noneOf(FileVisitOption.class), 1,
+                new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        String name = file.getFileName().toString();
+                        if (attrs.isRegularFile() && !name.startsWith(".") && !name.endsWith(".tmp")) {
+                            files.put(name, attrs);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        logger.warn("No se pudo leer {}: {}", file, e.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        return files;
+    }
+
+    private ManifestEntry hashFile(String name, long size, long lastModified) throws IOException {
+        Path file = STORAGE_DIRECTORY.resolve(name);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        boolean complete = size > 0 && (!name.endsWith(".pdf") || hasPdfEofMarker(file, size));
+        return new ManifestEntry(name, size, lastModified, HexFormat.of().formatHex(digest.digest()), complete);
+    }
+
+    /**
+     * Un PDF escrito por completo termina con %%EOF (seguido opcionalmente de saltos de linea).
+     */
+    private boolean hasPdfEofMarker(Path file, long size) throws IOException {
+        int tailLength = (int) Math.min(size, PDF_TAIL_BYTES);
+        ByteBuffer tail = ByteBuffer.allocate(tailLength);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(size - tailLength);
+            int read = 0;
+            while (tail.hasRemaining() && read != -1) {
+                read = channel.read(tail);
+            }
+        }
+        byte[] bytes = tail.array();
+        for (int i = bytes.length - PDF_EOF_MARKER.length; i >= 0; i--) {
+            int j = 0;
+            while (j < PDF_EOF_MARKER.length && bytes[i + j] == PDF_EOF_MARKER[j]) j++;
+            if (j == PDF_EOF_MARKER.length) return true;
+        }
+        return false;
+    }
+
+    private Map<String, ManifestEntry> readManifest() {
+        Map<String, ManifestEntry> manifest = new HashMap<>();
+        if (!Files.exists(MANIFEST_FILE)) return manifest;
+        try {
+            for (String line : Files.readAllLines(MANIFEST_FILE, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length != 5) continue;
+                manifest.put(fields[0], new ManifestEntry(fields[0], Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2]), fields[3], "1".equals(fields[4])));
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Manifiesto de facturas invalido, se recalcularan todos los checksums: {}", e.getMessage());
+            manifest.clear();
+        }
+        return manifest;
+    }
+
+    private void writeManifest(Map<String, ManifestEntry> manifest) throws IOException {
+        Files.createDirectories(STORAGE_DIRECTORY);
+        Path tempPath = MANIFEST_FILE.resolveSibling(MANIFEST_FILE.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            for (ManifestEntry entry : manifest.values()) {
+                writer.write(entry.name + "\t" + entry.size + "\t" + entry.lastModified + "\t"
+                        + entry.sha256 + "\t" + (entry.complete ? "1" : "0"));
+                writer.newLine();
+            }
+        }
+        Files.move(tempPath, MANIFEST_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Linea del manifiesto: archivo, tamaño, fecha de modificacion, SHA-256 y si el archivo esta completo.
+     */
+    private static class ManifestEntry {
+        private final String name;
+        private final long size;
+        private final long lastModified;
+        private final String sha256;
+        private final boolean complete;
+
+        ManifestEntry(String name, long size, long lastModified, String sha256, boolean complete) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+            this.complete = complete;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de numeros de factura consecutivos por año (INV-YYYY-00000001).
+ * Reserva bloques de numeros en la tabla invoice_sequence y los entrega desde memoria
+ * con un AtomicLong, por lo que solo consulta la base de datos al agotar un bloque.
+ * Los numeros de un bloque no usado (por reinicio del nodo) se pierden: la numeracion
+ * puede tener huecos pero nunca colisiones.
+ *
+ * La tabla invoice_sequence (seq_name VARCHAR(20) PK, next_value BIGINT) forma parte del
+ * esquema que se mantiene fuera de la aplicacion; la fila de cada año se crea al primer uso.
+ */
+@Component
+public class InvoiceNumberGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceNumberGenerator.class);
+    private static final int NUMBER_DIGITS = 8;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+    private final int blockSize;
+
+    private volatile Block current = new Block(0, 0, 0);
+
+    public InvoiceNumberGenerator(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${invoice.number.block-size:50}") int blockSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Entrega el siguiente numero de factura del año actual.
+     * @return Cadena de texto con el formato INV-YYYY-NNNNNNNN.
+     */
+    public String nextInvoiceNumber() {
+        int year = LocalDate.now().getYear();
+        while (true) {
+            Block block = current;
+            if (block.year == year) {
+                long value = block.next.getAndIncrement();
+                if (value < block.end) {
+                    return format(year, value);
+                }
+            }
+            synchronized (this) {
+                if (current == block) {
+                    current = allocateBlock(year);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserva un bloque de numeros en una transaccion propia, para que el bloqueo de la fila
+     * de secuencia dure solo lo que tarda la reserva y no toda la facturacion.
+     */
+    private Block allocateBlock(int year) {
+        String sequenceName = "INV-" + year;
+        Long start = newTransaction.execute(status -> {
+            jdbcTemplate.update("INSERT IGNORE INTO invoice_sequence (seq_name, next_value) VALUES (?, 1)",
+                    sequenceName);
+            Long next = jdbcTemplate.queryForObject(
+                    "SELECT next_value FROM invoice_sequence WHERE seq_name = ? FOR UPDATE",
+                    Long.class, sequenceName);
+            jdbcTemplate.update("UPDATE invoice_sequence SET next_value = ? WHERE seq_name = ?",
+                    next + blockSize, sequenceName);
+            return next;
+        });
+        logger.debug("Bloque de facturas reservado para {}: {} - {}", year, start, start + blockSize - 1);
+        return new Block(year, start, start + blockSize);
+    }
+
+    private static String format(int year, long value) {
+        String digits = Long.toString(value);
+        StringBuilder number = new StringBuilder(9 + NUMBER_DIGITS).append("INV-").append(year).append('-');
+        for (int i = digits.length(); i < NUMBER_DIGITS; i++) {
+            number.append('0');
+        }
+        return number.append(digits).toString();
+    }
+
+    /**
+     * Rango de numeros [next, end) reservado para un año.
+     */
+    private static class Block {
+        private final int year;
+        private final AtomicLong next;
+        private final long end;
+
+        Block(int year, long start, long end) {
+            this.year = year;
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
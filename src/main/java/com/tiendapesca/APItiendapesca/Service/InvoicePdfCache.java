@@ -0,0 +1,102 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU en memoria de PDFs de facturas ya renderizados, limitada por el total de bytes.
+ * Los PDFs siempre se persisten primero en el almacenamiento en disco, por lo que expulsar
+ * una entrada solo libera memoria: la siguiente lectura se sirve desde el archivo.
+ */
+@Component
+public class InvoicePdfCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedPdf> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    public InvoicePdfCache(@Value("${invoice.pdf.cache.max-bytes:33554432}") long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Busca el PDF de una factura y lo marca como usado recientemente.
+     * @param invoiceNumber Numero de factura.
+     * @return Entrada cacheada o null si no esta en memoria.
+     */
+    public synchronized CachedPdf get(String invoiceNumber) {
+        CachedPdf cached = entries.get(invoiceNumber);
+        if (cached == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return cached;
+    }
+
+    /**
+     * Guarda el contenido de un PDF, expulsando las entradas menos usadas hasta
+     * respetar el limite de bytes. Los PDFs mas grandes que el limite no se cachean.
+     * @param invoiceNumber Numero de factura.
+     * @param content Contenido del PDF (ya persistido en disco).
+     * @param lastModified Fecha de modificacion del archivo en disco, en milisegundos.
+     */
+    public synchronized void put(String invoiceNumber, byte[] content, long lastModified) {
+        if (content == null || content.length > maxBytes) return;
+
+        CachedPdf previous = entries.put(invoiceNumber, new CachedPdf(content, lastModified));
+        if (previous != null) currentBytes -= previous.getContent().length;
+        currentBytes += content.length;
+
+        Iterator<CachedPdf> eldest = entries.values().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            currentBytes -= eldest.next().getContent().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Elimina un PDF de la cache, por ejemplo al regenerarlo.
+     * @param invoiceNumber Numero de factura.
+     */
+    public synchronized void invalidate(String invoiceNumber) {
+        CachedPdf removed = entries.remove(invoiceNumber);
+        if (removed != null) currentBytes -= removed.getContent().length;
+    }
+
+    /**
+     * Resumen del estado de la cache para monitoreo.
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("bytes", currentBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        return stats;
+    }
+
+    /**
+     * PDF cacheado junto con la fecha de modificacion de su archivo en disco.
+     */
+    public static class CachedPdf {
+        private final byte[] content;
+        private final long lastModified;
+
+        public CachedPdf(byte[] content, long lastModified) {
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+
+        public byte[] getContent() { return content; }
+
+        public long getLastModified() { return lastModified; }
+    }
+}
@@ -0,0 +1,268 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
+import com.tiendapesca.APItiendapesca.Entities.Invoice;
+import com.tiendapesca.APItiendapesca.Repository.Invoice_Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Proceso masivo para regenerar los PDFs de todas las facturas (cambios de marca,
+ * correcciones de plantilla o recuperacion de archivos). Recorre las facturas por paginas
+ * ordenadas por ID, carga cada pagina con sus ordenes y detalles en una sola consulta,
+ * renderiza en paralelo sobre un pool acotado y guarda un checkpoint para poder reanudar.
+ *
+ * El checkpoint guarda el ultimo ID recorrido y los IDs de las facturas que fallaron; al
+ * reanudar, primero se reintentan las fallidas y luego se sigue despues del ultimo ID. Si el
+ * recorrido termina con fallas, el checkpoint se conserva para reintentarlas.
+ */
+@Service
+public class InvoiceReissue_Service {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceReissue_Service.class);
+    private static final Path CHECKPOINT_FILE = Paths.get("invoices", ".reissue-checkpoint");
+
+    private final Invoice_Repository invoiceRepository;
+    private final Invoice_Service invoiceService;
+    private final PdfGeneratorService pdfGeneratorService;
+    private final InvoicePdfCache pdfCache;
+    private final int pageSize;
+    private final int threads;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean stopRequested = new AtomicBoolean(false);
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile long totalInvoices;
+    private volatile int lastProcessedId;
+    // IDs fallidos pendientes de reintento; solo los modifica el hilo del proceso
+    private volatile Set<Integer> failedIds = new TreeSet<>();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String lastError;
+
+    @Autowired
+    public InvoiceReissue_Service(Invoice_Repository invoiceRepository,
+                                  Invoice_Service invoiceService,
+                                  PdfGeneratorService pdfGeneratorService,
+                                  InvoicePdfCache pdfCache,
+                                  @Value("${invoice.reissue.page-size:200}") int pageSize,
+                                  @Value("${invoice.reissue.threads:0}") int threads) {
+        this.invoiceRepository = invoiceRepository;
+        this.invoiceService = invoiceService;
+        this.pdfGeneratorService = pdfGeneratorService;
+        this.pdfCache = pdfCache;
+        this.pageSize = pageSize;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Inicia el proceso en segundo plano.
+     * @param resume true para continuar desde el ultimo checkpoint, false para empezar desde el inicio.
+     * @return false si ya hay un proceso en ejecucion.
+     */
+    public boolean start(boolean resume) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        Set<Integer> retryIds = new TreeSet<>();
+        int startAfterId = resume ? readCheckpoint(retryIds) : 0;
+        stopRequested.set(false);
+        processed.set(0);
+        failed.set(0);
+        bytesWritten.set(0);
+        lastError = null;
+        lastProcessedId = startAfterId;
+        failedIds = retryIds;
+        totalInvoices = invoiceRepository.count();
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+
+        Thread worker = new Thread(() -> run(startAfterId, new ArrayList<>(retryIds)), "invoice-reissue");
+        worker.setDaemon(true);
+        worker.start();
+        logger.info("Reemision de facturas iniciada desde ID {} con {} reintentos ({} hilos, paginas de {})",
+                startAfterId, retryIds.size(), threads, pageSize);
+        return true;
+    }
+
+    /**
+     * Solicita detener el proceso al terminar la pagina en curso. El checkpoint permite reanudarlo.
+     */
+    public void stop() {
+        stopRequested.set(true);
+    }
+
+    /**
+     * Progreso y rendimiento del proceso actual o del ultimo ejecutado.
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        long done = processed.get();
+        LocalDateTime end = finishedAt != null ? finishedAt : LocalDateTime.now();
+        double seconds = startedAt != null ? Duration.between(startedAt, end).toMillis() / 1000.0 : 0;
+
+        status.put("running", running.get());
+        status.put("startedAt", startedAt);
+        status.put("finishedAt", finishedAt);
+        status.put("totalInvoices", totalInvoices);
+        status.put("processed", done);
+        status.put("failed", failed.get());
+        status.put("pendingRetries", failedIds.size());
+        status.put("lastProcessedId", lastProcessedId);
+        status.put("invoicesPerSecond", seconds > 0 ? Math.round(done / seconds * 100) / 100.0 : 0);
+        status.put("bytesWritten", bytesWritten.get());
+        status.put("lastError", lastError);
+        return status;
+    }
+
+    private void run(int startAfterId, List<Integer> retryIds) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int lastId = startAfterId;
+        try {
+            // Primero las facturas que fallaron en la ejecucion anterior
+            for (int from = 0; from < retryIds.size() && !stopRequested.get(); from += pageSize) {
+                processPage(pool, retryIds.subList(from, Math.min(from + pageSize, retryIds.size())));
+                writeCheckpoint(lastId);
+            }
+
+            while (!stopRequested.get()) {
+                List<Integer> ids = invoiceRepository.findIdsAfter(lastId, PageRequest.of(0, pageSize));
+                if (ids.isEmpty()) break;
+
+                processPage(pool, ids);
+
+                lastId = ids.get(ids.size() - 1);
+                lastProcessedId = lastId;
+                writeCheckpoint(lastId);
+            }
+
+            // Con fallas pendientes se conserva el checkpoint para reintentarlas al reanudar
+            if (!stopRequested.get() && failedIds.isEmpty()) {
+                Files.deleteIfExists(CHECKPOINT_FILE);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastError = "Proceso interrumpido";
+        } catch (Exception e) {
+            logger.error("Error en la reemision de facturas: {}", e.getMessage(), e);
+            lastError = e.getMessage();
+        } finally {
+            pool.shutdown();
+            finishedAt = LocalDateTime.now();
+            running.set(false);
+            logger.info("Reemision de facturas finalizada. Procesadas: {}, fallidas: {}, pendientes: {}, ultimo ID: {}",
+                    processed.get(), failed.get(), failedIds.size(), lastId);
+        }
+    }
+
+    /**
+     * Reemite una pagina de facturas y actualiza los IDs fallidos. Se espera a la pagina
+     * completa: solo una pagina de facturas en memoria a la vez.
+     */
+    private void processPage(ExecutorService pool, List<Integer> ids) throws InterruptedException {
+        List<Invoice> invoices = invoiceRepository.findAllWithOrderDetailsByIdIn(ids);
+        Set<Integer> pending = new TreeSet<>(failedIds);
+        // Las facturas eliminadas desde la ejecucion anterior ya no se reintentan
+        ids.forEach(pending::remove);
+
+        List<Callable<Void>> tasks = new ArrayList<>(invoices.size());
+        for (Invoice invoice : invoices) {
+            InvoicePdfDTO dto = invoiceService.convertToInvoicePdfDTO(invoice);
+            tasks.add(() -> {
+                reissue(invoice, dto);
+                return null;
+            });
+        }
+
+        List<Future<Void>> results = pool.invokeAll(tasks);
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get();
+                processed.incrementAndGet();
+            } catch (ExecutionException e) {
+                failed.incrementAndGet();
+                pending.add(invoices.get(i).getId());
+                lastError = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+            }
+        }
+        failedIds = pending;
+    }
+
+    /**
+     * Renderiza y reemplaza de forma atomica el PDF de una factura.
+     */
+    private void reissue(Invoice invoice, InvoicePdfDTO dto) throws IOException {
+        String pdfPath = pdfGeneratorService.renderPdfToStorage(dto, invoice.getInvoiceNumber());
+        pdfCache.invalidate(invoice.getInvoiceNumber());
+        bytesWritten.addAndGet(Files.size(Paths.get(pdfPath)));
+
+        if (!pdfPath.equals(invoice.getPdfUrl())) {
+            invoiceRepository.updatePdfUrl(invoice.getId(), pdfPath);
+        }
+    }
+
+    /**
+     * Lee el checkpoint: el ultimo ID recorrido en la primera linea y, en la segunda, los IDs
+     * fallidos separados por comas.
+     * @param retryIds Recibe los IDs fallidos.
+     * @return Ultimo ID recorrido, 0 si no hay checkpoint.
+     */
+    private int readCheckpoint(Set<Integer> retryIds) {
+        try {
+            if (Files.exists(CHECKPOINT_FILE)) {
+                List<String> lines = Files.readAllLines(CHECKPOINT_FILE, StandardCharsets.UTF_8);
+                if (lines.size() > 1 && !lines.get(1).isBlank()) {
+                    for (String id : lines.get(1).split(",")) {
+                        retryIds.add(Integer.parseInt(id.trim()));
+                    }
+                }
+                return Integer.parseInt(lines.get(0).trim());
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("No se pudo leer el checkpoint de reemision: {}", e.getMessage());
+            retryIds.clear();
+        }
+        return 0;
+    }
+
+    private void writeCheckpoint(int lastId) throws IOException {
+        StringBuilder content = new StringBuilder().append(lastId).append('\n');
+        for (int id : failedIds) {
+            if (content.charAt(content.length() - 1) != '\n') content.append(',');
+            content.append(id);
+        }
+        Files.createDirectories(CHECKPOINT_FILE.getParent());
+        Path tempPath = CHECKPOINT_FILE.resolveSibling(CHECKPOINT_FILE.getFileName() + ".tmp");
+        Files.writeString(tempPath, content, StandardCharsets.UTF_8);
+        Files.move(tempPath, CHECKPOINT_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
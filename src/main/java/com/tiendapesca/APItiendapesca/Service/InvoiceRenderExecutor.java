@@ -0,0 +1,181 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Pool dedicado para renderizar PDFs de facturas con concurrencia y cola acotadas.
+ * Cada renderizado escribe directamente sobre el archivo de destino, por lo que la memoria
+ * usada depende del numero de hilos y no del volumen de ordenes. Cuando la cola esta llena
+ * el trabajo se difiere en lugar de acumularse.
+ */
+@Component
+public class InvoiceRenderExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceRenderExecutor.class);
+
+    // Limites superiores (ms) de los buckets del histograma de tiempos de renderizado
+    private static final long[] RENDER_TIME_BUCKETS_MS = {50, 100, 250, 500, 1000, 2500, 5000};
+
+    private final PdfGeneratorService pdfGeneratorService;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+
+    private final LongAdder rendered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder totalRenderTimeMs = new LongAdder();
+    private final LongAdder[] renderTimeHistogram = new LongAdder[RENDER_TIME_BUCKETS_MS.length + 1];
+
+    public InvoiceRenderExecutor(PdfGeneratorService pdfGeneratorService,
+                                 @Value("${invoice.render.concurrency:2}") int concurrency,
+                                 @Value("${invoice.render.queue-capacity:50}") int queueCapacity,
+                                 @Value("${invoice.render.timeout-ms:30000}") long timeoutMs) {
+        this.pdfGeneratorService = pdfGeneratorService;
+        this.timeoutMs = timeoutMs;
+        for (int i = 0; i < renderTimeHistogram.length; i++) {
+            renderTimeHistogram[i] = new LongAdder();
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "invoice-render-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Renderiza la factura en el pool y espera a que termine.
+     * @param invoiceDto Datos de la factura.
+     * @param invoiceNumber Numero de factura (define el nombre del archivo).
+     * @return Ruta del PDF generado, o null si la cola esta llena y el trabajo se difiere.
+     * @throws IOException Si el renderizado falla o excede el tiempo maximo.
+     */
+    public String render(InvoicePdfDTO invoiceDto, String invoiceNumber) throws IOException {
+        Future<String> result;
+        try {
+            result = executor.submit(() -> renderTimed(invoiceDto, invoiceNumber));
+        } catch (RejectedExecutionException e) {
+            deferred.increment();
+            logger.warn("Cola de renderizado llena ({} pendientes), se difiere la factura {}",
+                    executor.getQueue().size(), invoiceNumber);
+            return null;
+        }
+
+        try {
+            return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Renderizado interrumpido para la factura " + invoiceNumber, e);
+        } catch (TimeoutException e) {
+            // Quien espera ya fallo: el renderizado no debe seguir ocupando un hilo del pool
+            result.cancel(true);
+            throw new IOException("Tiempo de renderizado excedido para la factura " + invoiceNumber, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Encola el renderizado de la factura sin esperar a que termine.
+     * @param invoiceDto Datos de la factura.
+     * @param invoiceNumber Numero de factura (define el nombre del archivo).
+     * @param onRendered Recibe la ruta del PDF generado; se ejecuta en el hilo del pool.
+     * @return false si la cola esta llena y el trabajo se difiere.
+     */
+    public boolean submit(InvoicePdfDTO invoiceDto, String invoiceNumber, Consumer<String> onRendered) {
+        try {
+            executor.execute(() -> {
+                try {
+                    onRendered.accept(renderTimed(invoiceDto, invoiceNumber));
+                } catch (Exception e) {
+                    logger.error("Error al renderizar la factura {}: {}", invoiceNumber, e.getMessage());
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            deferred.increment();
+            logger.warn("Cola de renderizado llena ({} pendientes), se difiere la factura {}",
+                    executor.getQueue().size(), invoiceNumber);
+            return false;
+        }
+    }
+
+    private String renderTimed(InvoicePdfDTO invoiceDto, String invoiceNumber) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String pdfPath = pdfGeneratorService.renderPdfToStorage(invoiceDto, invoiceNumber);
+            rendered.increment();
+            return pdfPath;
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            throw e;
+        } finally {
+            recordRenderTime(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private void recordRenderTime(long elapsedMs) {
+        totalRenderTimeMs.add(elapsedMs);
+        int bucket = 0;
+        while (bucket < RENDER_TIME_BUCKETS_MS.length && elapsedMs > RENDER_TIME_BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        renderTimeHistogram[bucket].increment();
+    }
+
+    /**
+     * Metricas del pool: profundidad de cola, hilos activos, contadores e histograma de tiempos.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("concurrency", executor.getMaximumPoolSize());
+        stats.put("activeRenders", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueRemainingCapacity", executor.getQueue().remainingCapacity());
+        stats.put("rendered", rendered.sum());
+        stats.put("failed", failed.sum());
+        stats.put("deferred", deferred.sum());
+
+        long count = rendered.sum() + failed.sum();
+        stats.put("avgRenderTimeMs", count > 0 ? totalRenderTimeMs.sum() / count : 0);
+
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        long lowerBound = 0;
+        for (int i = 0; i < RENDER_TIME_BUCKETS_MS.length; i++) {
+            histogram.put(lowerBound + "-" + RENDER_TIME_BUCKETS_MS[i] + "ms", renderTimeHistogram[i].sum());
+            lowerBound = RENDER_TIME_BUCKETS_MS[i];
+        }
+        histogram.put(">" + lowerBound + "ms", renderTimeHistogram[RENDER_TIME_BUCKETS_MS.length].sum());
+        stats.put("renderTimeHistogram", histogram);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,203 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
+import com.tiendapesca.APItiendapesca.Entities.Invoice;
+import com.tiendapesca.APItiendapesca.Entities.Users;
+import com.tiendapesca.APItiendapesca.Repository.Invoice_Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Descarga masiva de las facturas de un cliente para un rango de fechas, ya sea como ZIP
+ * con los PDFs almacenados o como un estado de cuenta consolidado en un solo PDF, y
+ * exportacion XML de todas las facturas del rango para el sistema tributario.
+ * Las facturas se recorren por paginas ordenadas por ID y se escriben directamente
+ * en la respuesta, por lo que solo una pagina esta en memoria a la vez.
+ */
+@Service
+public class InvoiceStatement_Service {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceStatement_Service.class);
+
+    private final Invoice_Repository invoiceRepository;
+    private final Invoice_Service invoiceService;
+    private final PdfGeneratorService pdfGeneratorService;
+    private final InvoiceXmlWriter invoiceXmlWriter;
+    private final int pageSize;
+
+    @Autowired
+    public InvoiceStatement_Service(Invoice_Repository invoiceRepository,
+                                    Invoice_Service invoiceService,
+                                    PdfGeneratorService pdfGeneratorService,
+                                    InvoiceXmlWriter invoiceXmlWriter,
+                                    @Value("${invoice.statement.page-size:100}") int pageSize) {
+        this.invoiceRepository = invoiceRepository;
+        this.invoiceService = invoiceService;
+        this.pdfGeneratorService = pdfGeneratorService;
+        this.invoiceXmlWriter = invoiceXmlWriter;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Cuenta las facturas del usuario en el rango indicado (ambas fechas inclusivas).
+     */
+    public long countInvoices(Integer userId, LocalDate from, LocalDate to) {
+        return invoiceRepository.countByUserAndDate(userId, from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+    }
+
+    /**
+     * Escribe un ZIP con el PDF de cada factura del rango. Los PDFs que aun no se generaron
+     * se renderizan antes de agregarlos; una factura que no se pueda generar se omite para
+     * no cortar la descarga del resto.
+     * @param userId ID del usuario autenticado.
+     * @param from Fecha inicial (inclusiva).
+     * @param to Fecha final (inclusiva).
+     * @param outputStream Flujo de la respuesta; no se cierra.
+     * @throws IOException Si falla la escritura del ZIP.
+     */
+    public void writeZip(Integer userId, LocalDate from, LocalDate to, OutputStream outputStream) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        // Los PDFs ya vienen comprimidos: recomprimirlos solo gasta CPU
+        zip.setLevel(Deflater.BEST_SPEED);
+
+        Iterator<Invoice> invoices = userInvoices(userId, from, to);
+        while (invoices.hasNext()) {
+            Invoice invoice = invoices.next();
+            Path pdfPath;
+            try {
+                pdfPath = invoiceService.ensurePdfRendered(invoice);
+            } catch (IOException e) {
+                logger.warn("Se omite la factura {} del ZIP: {}", invoice.getInvoiceNumber(), e.getMessage());
+                continue;
+            }
+
+            ZipEntry entry = new ZipEntry("factura_" + invoice.getInvoiceNumber() + ".pdf");
+            entry.setLastModifiedTime(Files.getLastModifiedTime(pdfPath));
+            zip.putNextEntry(entry);
+            Files.copy(pdfPath, zip);
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    /**
+     * Escribe un estado de cuenta en PDF con todas las facturas del rango y el resumen del periodo.
+     * @param user Usuario autenticado.
+     * @param from Fecha inicial (inclusiva).
+     * @param to Fecha final (inclusiva).
+     * @param outputStream Flujo de la respuesta; no se cierra.
+     */
+    public void writeStatement(Users user, LocalDate from, LocalDate to, OutputStream outputStream) {
+        Iterable<InvoicePdfDTO> invoices = () -> toPdfDtos(userInvoices(user.getId(), from, to));
+        pdfGeneratorService.generateStatementPdf(user.getName(), user.getEmail(), from, to, invoices, outputStream);
+    }
+
+    /**
+     * Cuenta todas las facturas emitidas en el rango indicado (ambas fechas inclusivas).
+     */
+    public long countAllInvoices(LocalDate from, LocalDate to) {
+        return invoiceRepository.countByDate(from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+    }
+
+    /**
+     * Escribe en un solo documento XML las facturas electronicas de todos los clientes en el rango.
+     * @param from Fecha inicial (inclusiva).
+     * @param to Fecha final (inclusiva).
+     * @param outputStream Flujo de la respuesta; no se cierra.
+     * @throws IOException Si falla la escritura del XML.
+     */
+    public void writeXmlExport(LocalDate from, LocalDate to, OutputStream outputStream) throws IOException {
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.plusDays(1).atStartOfDay();
+        Iterable<InvoicePdfDTO> invoices = () -> toPdfDtos(new InvoicePageIterator(lastId ->
+                invoiceRepository.findIdsByDateAfter(start, end, lastId, PageRequest.of(0, pageSize))));
+        invoiceXmlWriter.writeBatch(from, to, invoices, outputStream);
+    }
+
+    private Iterator<Invoice> userInvoices(Integer userId, LocalDate from, LocalDate to) {
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.plusDays(1).atStartOfDay();
+        return new InvoicePageIterator(lastId ->
+                invoiceRepository.findIdsByUserAndDateAfter(userId, start, end, lastId, PageRequest.of(0, pageSize)));
+    }
+
+    private Iterator<InvoicePdfDTO> toPdfDtos(Iterator<Invoice> invoices) {
+        return new Iterator<InvoicePdfDTO>() {
+            @Override
+            public boolean hasNext() {
+                return invoices.hasNext();
+            }
+
+            @Override
+            public InvoicePdfDTO next() {
+                return invoiceService.convertToInvoicePdfDTO(invoices.next());
+            }
+        };
+    }
+
+    /**
+     * Recorre facturas por paginas (paginacion por clave), cargando cada pagina con sus
+     * ordenes, detalles y productos en una sola consulta.
+     */
+    private class InvoicePageIterator implements Iterator<Invoice> {
+        private final Function<Integer, List<Integer>> idPageLoader;
+        private Iterator<Invoice> page = Collections.emptyIterator();
+        private int lastId = 0;
+        private boolean exhausted = false;
+
+        /**
+         * @param idPageLoader Devuelve la pagina de IDs posteriores al ultimo ID recibido.
+         */
+        InvoicePageIterator(Function<Integer, List<Integer>> idPageLoader) {
+            this.idPageLoader = idPageLoader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!page.hasNext() && !exhausted) {
+                loadNextPage();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public Invoice next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return page.next();
+        }
+
+        private void loadNextPage() {
+            List<Integer> ids = idPageLoader.apply(lastId);
+            if (ids.isEmpty()) {
+                exhausted = true;
+                return;
+            }
+            lastId = ids.get(ids.size() - 1);
+
+            List<Invoice> invoices = new ArrayList<>(invoiceRepository.findAllWithOrderDetailsByIdIn(ids));
+            invoices.sort(Comparator.comparing(Invoice::getId));
+            page = invoices.iterator();
+        }
+    }
+}
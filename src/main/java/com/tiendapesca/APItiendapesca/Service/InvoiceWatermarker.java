@@ -0,0 +1,110 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estampa en segundo plano la marca de agua ANULADA sobre los PDFs de facturas canceladas.
+ * Usa un solo hilo: el estampado es incremental y rapido, y asi dos cancelaciones de la
+ * misma factura nunca escriben el archivo al mismo tiempo.
+ */
+@Component
+public class InvoiceWatermarker {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceWatermarker.class);
+
+    private final PdfGeneratorService pdfGeneratorService;
+    private final InvoicePdfCache pdfCache;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "invoice-watermark");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong pending = new AtomicLong();
+    private final LongAdder stamped = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public InvoiceWatermarker(PdfGeneratorService pdfGeneratorService, InvoicePdfCache pdfCache) {
+        this.pdfGeneratorService = pdfGeneratorService;
+        this.pdfCache = pdfCache;
+    }
+
+    /**
+     * Programa el estampado del PDF de una factura cancelada para cuando la transaccion
+     * actual confirme, de modo que un rollback no deje marcada una factura vigente.
+     * Si la factura aun no tiene ruta de PDF, el renderizado en segundo plano pudo haber escrito
+     * ya el archivo sin la marca: se estampa la ruta fija de la factura si el archivo existe. Si
+     * todavia no existe, el renderizado lo estampa al guardar la ruta (ver Invoice_Service).
+     * @param invoiceNumber Numero de factura.
+     * @param pdfUrl Ruta del PDF almacenado, o null.
+     */
+    public void stampAfterCommit(String invoiceNumber, String pdfUrl) {
+        String path = pdfUrl != null ? pdfUrl : PdfGeneratorService.storagePath(invoiceNumber, ".pdf");
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submit(invoiceNumber, path);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                submit(invoiceNumber, path);
+            }
+        });
+    }
+
+    private void submit(String invoiceNumber, String pdfUrl) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                if (!Files.exists(Paths.get(pdfUrl))) {
+                    skipped.increment();
+                    return;
+                }
+                if (pdfGeneratorService.stampCanceledWatermark(pdfUrl)) {
+                    pdfCache.invalidate(invoiceNumber);
+                    stamped.increment();
+                } else {
+                    skipped.increment();
+                }
+            } catch (Exception e) {
+                failed.increment();
+                logger.error("No se pudo estampar la factura anulada {}: {}", invoiceNumber, e.getMessage());
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Metricas del estampado: pendientes, estampadas, omitidas (ya marcadas o sin archivo) y fallidas.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", pending.get());
+        stats.put("stamped", stamped.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,154 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
+import com.tiendapesca.APItiendapesca.Dtos.ProductItemDTO;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Genera la factura electronica en XML a partir de los mismos datos usados para el PDF.
+ * Se escribe con StAX directamente sobre el flujo de salida, sin construir un arbol DOM,
+ * por lo que una exportacion masiva usa la misma memoria para una factura que para miles.
+ */
+@Component
+public class InvoiceXmlWriter {
+
+    private static final String ENCODING = "UTF-8";
+    private static final String CURRENCY = "CRC";
+
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    private final PdfGeneratorService pdfGeneratorService;
+
+    public InvoiceXmlWriter(PdfGeneratorService pdfGeneratorService) {
+        this.pdfGeneratorService = pdfGeneratorService;
+    }
+
+    /**
+     * Genera el XML de una factura y lo guarda junto a su PDF (factura_NUMERO.xml).
+     * @return Ruta relativa del archivo generado.
+     */
+    public String saveXmlToStorage(InvoicePdfDTO invoiceDto) throws IOException {
+        return pdfGeneratorService.writeToStorage(invoiceDto.getInvoiceNumber(), ".xml",
+                out -> writeInvoiceDocument(invoiceDto, out));
+    }
+
+    /**
+     * Escribe un documento XML con una sola factura. El flujo no se cierra.
+     */
+    public void writeInvoiceDocument(InvoicePdfDTO invoiceDto, OutputStream outputStream) throws IOException {
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(outputStream, ENCODING);
+            writer.writeStartDocument(ENCODING, "1.0");
+            writeInvoice(writer, invoiceDto);
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Error al generar el XML de la factura " + invoiceDto.getInvoiceNumber(), e);
+        }
+    }
+
+    /**
+     * Escribe un lote de facturas en un solo documento, consumiendolas una a una del iterable.
+     * Al final se agrega un resumen con la cantidad de facturas y el monto total. El flujo no se cierra.
+     * @param from Fecha inicial del periodo exportado.
+     * @param to Fecha final del periodo exportado.
+     * @param invoices Facturas a exportar.
+     * @param outputStream Flujo de salida.
+     */
+    public void writeBatch(LocalDate from, LocalDate to, Iterable<InvoicePdfDTO> invoices,
+                           OutputStream outputStream) throws IOException {
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(outputStream, ENCODING);
+            writer.writeStartDocument(ENCODING, "1.0");
+            writer.writeStartElement("Facturas");
+            writer.writeAttribute("desde", from.toString());
+            writer.writeAttribute("hasta", to.toString());
+            writer.writeAttribute("generado", LocalDateTime.now().toString());
+
+            long count = 0;
+            BigDecimal total = BigDecimal.ZERO;
+            for (InvoicePdfDTO invoiceDto : invoices) {
+                writer.writeCharacters("\n");
+                writeInvoice(writer, invoiceDto);
+                count++;
+                if (invoiceDto.getTotal() != null) total = total.add(invoiceDto.getTotal());
+            }
+
+            writer.writeCharacters("\n");
+            writer.writeStartElement("Resumen");
+            writeElement(writer, "CantidadFacturas", String.valueOf(count));
+            writeElement(writer, "Moneda", CURRENCY);
+            writeAmount(writer, "Total", total);
+            writer.writeEndElement();
+
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Error al generar la exportacion XML de facturas", e);
+        }
+    }
+
+    private void writeInvoice(XMLStreamWriter writer, InvoicePdfDTO invoiceDto) throws XMLStreamException {
+        writer.writeStartElement("Factura");
+        writer.writeAttribute("numero", invoiceDto.getInvoiceNumber());
+        writer.writeAttribute("fecha", invoiceDto.getDate() != null ? invoiceDto.getDate().toString() : "");
+
+        writer.writeStartElement("Emisor");
+        writeElement(writer, "Nombre", PdfGeneratorService.COMPANY_NAME);
+        writeElement(writer, "Direccion", PdfGeneratorService.COMPANY_ADDRESS);
+        writeElement(writer, "Telefono", PdfGeneratorService.COMPANY_PHONE);
+        writeElement(writer, "Correo", PdfGeneratorService.COMPANY_EMAIL);
+        writer.writeEndElement();
+
+        writer.writeStartElement("Receptor");
+        writeElement(writer, "Nombre", invoiceDto.getCustomerName());
+        writeElement(writer, "Correo", invoiceDto.getCustomerEmail());
+        writeElement(writer, "Direccion", invoiceDto.getShippingAddress());
+        writeElement(writer, "Telefono", invoiceDto.getPhone());
+        writer.writeEndElement();
+
+        writeElement(writer, "MedioPago", invoiceDto.getPaymentMethod());
+
+        writer.writeStartElement("Detalle");
+        int line = 1;
+        for (ProductItemDTO item : invoiceDto.getProducts()) {
+            writer.writeStartElement("Linea");
+            writer.writeAttribute("numero", String.valueOf(line++));
+            writeElement(writer, "Descripcion", item.getName());
+            writeElement(writer, "Cantidad", String.valueOf(item.getQuantity()));
+            writeAmount(writer, "PrecioUnitario", item.getUnitPrice());
+            writeAmount(writer, "Subtotal", item.getSubtotal());
+            writeAmount(writer, "Impuesto", item.getTax());
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+
+        writer.writeStartElement("Resumen");
+        writeElement(writer, "Moneda", CURRENCY);
+        writeAmount(writer, "Subtotal", invoiceDto.getSubtotal());
+        writeAmount(writer, "Impuesto", invoiceDto.getTax());
+        writeAmount(writer, "Total", invoiceDto.getTotal());
+        writer.writeEndElement();
+
+        writer.writeEndElement();
+    }
+
+    private void writeAmount(XMLStreamWriter writer, String name, BigDecimal amount) throws XMLStreamException {
+        writeElement(writer, name, amount != null ? amount.toPlainString() : null);
+    }
+
+    private void writeElement(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        writer.writeStartElement(name);
+        if (value != null) writer.writeCharacters(value);
+        writer.writeEndElement();
+    }
+}
@@ -1,33 +1,49 @@
 package com.tiendapesca.APItiendapesca.Service;
 
 import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfFileDTO;
 import com.tiendapesca.APItiendapesca.Dtos.InvoiceResponseDTO;
 import com.tiendapesca.APItiendapesca.Dtos.OrderDetailDTO;
 import com.tiendapesca.APItiendapesca.Dtos.ProductItemDTO;
 import com.tiendapesca.APItiendapesca.Entities.Invoice;
 import com.tiendapesca.APItiendapesca.Entities.Orders;
+import com.tiendapesca.APItiendapesca.Entities.Users;
 import com.tiendapesca.APItiendapesca.Repository.Invoice_Repository;
 import com.tiendapesca.APItiendapesca.Repository.Orders_Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
  * Servicio encargado de la gestion integral de facturas, incluyendo generacion,
  * almacenamiento fisico de archivos PDF, persistencia en base de datos y envio por correo.
+ * Con invoice.pdf.lazy-rendering=true el PDF no se genera al facturar, sino la primera vez
+ * que se descarga o se envia por correo.
  */
 @Service
 @Transactional
@@ -39,33 +55,56 @@ public class Invoice_Service {
     private final Orders_Repository orderRepository;
     private final PdfGeneratorService pdfGeneratorService;
     private final Email_Service emailService;
+    private final InvoicePdfCache pdfCache;
+    private final InvoiceRenderExecutor renderExecutor;
+    private final InvoiceNumberGenerator invoiceNumberGenerator;
+    private final InvoiceXmlWriter invoiceXmlWriter;
+    private final InvoiceWatermarker invoiceWatermarker;
+    private final boolean lazyRendering;
+
+    // IDs de ordenes que se sabe que tienen factura. Solo guarda positivos: una factura no se
+    // elimina, pero una orden sin factura puede facturarse en cualquier momento (o en otro nodo)
+    private final BitSet invoicedOrders = new BitSet();
 
     @Autowired
     public Invoice_Service(Invoice_Repository invoiceRepository,
                            Orders_Repository orderRepository,
                            PdfGeneratorService pdfGeneratorService,
-                           Email_Service emailService) {
+                           Email_Service emailService,
+                           InvoicePdfCache pdfCache,
+                           InvoiceRenderExecutor renderExecutor,
+                           InvoiceNumberGenerator invoiceNumberGenerator,
+                           InvoiceXmlWriter invoiceXmlWriter,
+                           InvoiceWatermarker invoiceWatermarker,
+                           @Value("${invoice.pdf.lazy-rendering:false}") boolean lazyRendering) {
         this.invoiceRepository = invoiceRepository;
         this.orderRepository = orderRepository;
         this.pdfGeneratorService = pdfGeneratorService;
         this.emailService = emailService;
+        this.pdfCache = pdfCache;
+        this.renderExecutor = renderExecutor;
+        this.invoiceNumberGenerator = invoiceNumberGenerator;
+        this.invoiceXmlWriter = invoiceXmlWriter;
+        this.invoiceWatermarker = invoiceWatermarker;
+        this.lazyRendering = lazyRendering;
     }
 
     /**
-     * Genera un identificador unico para la factura basado en el año actual y un UUID corto.
-     * * @return Cadena de texto con el formato INV-YYYY-XXXXXXXX.
+     * Genera el siguiente numero consecutivo de factura del año actual.
+     * * @return Cadena de texto con el formato INV-YYYY-NNNNNNNN.
      */
     public String generateInvoiceNumber() {
-        return "INV-" + LocalDateTime.now().getYear() + "-"
-                + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        return invoiceNumberGenerator.nextInvoiceNumber();
     }
 
     /**
-     * Procesa la creacion de una factura vinculada a una orden, genera su archivo PDF
-     * Gestiona posibles duplicados mediante reintentos.
+     * Procesa la creacion de una factura vinculada a una orden y genera su factura electronica XML.
+     * El PDF se renderiza en segundo plano una vez confirmada la transaccion (o bajo demanda en modo
+     * de renderizado diferido), por lo que la factura devuelta aun no tiene ruta de PDF. El numero de factura es consecutivo y
+     * unico, por lo que no requiere reintentos.
      * * @param orderId Identificador de la orden a facturar.
-     * @return Entidad Invoice persistida con la ruta del PDF.
-     * @throws Exception Si la orden no existe, ya esta facturada o fallan los reintentos de guardado.
+     * @return Entidad Invoice persistida.
+     * @throws Exception Si la orden no existe, ya esta facturada o falla la generacion.
      */
     @Transactional
     public Invoice generateAndSaveInvoice(Integer orderId) throws Exception {
@@ -82,63 +121,101 @@ public class Invoice_Service {
             throw new RuntimeException("Ya existe una factura para esta orden");
         }
 
-        int maxRetries = 3;
-        for (int attempt = 0; attempt < maxRetries; attempt++) {
-            String invoiceNumber = generateInvoiceNumber();
-            Invoice invoice = new Invoice();
-            invoice.setOrder(order);
-            invoice.setDate(LocalDateTime.now());
-            invoice.setInvoiceNumber(invoiceNumber);
+        Invoice invoice = new Invoice();
+        invoice.setOrder(order);
+        invoice.setDate(LocalDateTime.now());
+        invoice.setInvoiceNumber(generateInvoiceNumber());
 
-            try {
-                logger.debug("Guardando factura inicial en BD");
-                Invoice savedInvoice = invoiceRepository.save(invoice);
+        try {
+            logger.debug("Guardando factura inicial en BD");
+            Invoice savedInvoice = invoiceRepository.save(invoice);
+            markInvoicedAfterCommit(orderId);
+            generateInvoiceXmlSafely(savedInvoice);
+
+            if (lazyRendering) {
+                logger.debug("Renderizado diferido activo, el PDF se generara bajo demanda");
+                return savedInvoice;
+            }
 
-                logger.debug("Generando PDF");
-                String pdfPath = generateInvoicePdfSafely(savedInvoice);
+            // El PDF se renderiza despues de confirmar, sin retener la transaccion ni su conexion
+            renderPdfAfterCommit(savedInvoice);
+            return savedInvoice;
 
-                savedInvoice.setPdfUrl(pdfPath);
-                return invoiceRepository.save(savedInvoice);
+        } catch (Exception e) {
+            logger.error("Error critico: {}", e.getMessage());
+            throw new Exception("Error al generar la factura: " + e.getMessage(), e);
+        }
+    }
 
-            } catch (DataIntegrityViolationException e) {
-                if (attempt == maxRetries - 1) throw new Exception("Fallo al generar numero de factura unico", e);
-            } catch (Exception e) {
-                logger.error("Error critico: {}", e.getMessage());
-                throw new Exception("Error al generar la factura: " + e.getMessage(), e);
+    /**
+     * Encola el PDF de una factura nueva cuando la transaccion confirma y guarda su ruta al terminar.
+     * Los datos se leen ahora, dentro de la transaccion. Si la cola esta llena o el renderizado
+     * falla, el PDF se genera en la primera descarga (ver ensurePdfRendered).
+     * Los datos se tomaron como factura vigente: si se cancela mientras el PDF esta en cola o
+     * renderizandose, la marca de agua se estampa al guardar la ruta.
+     * * @param invoice Entidad de la factura recien guardada.
+     */
+    private void renderPdfAfterCommit(Invoice invoice) {
+        InvoicePdfDTO invoicePdfDTO = convertToInvoicePdfDTO(invoice);
+        Integer invoiceId = invoice.getId();
+        String invoiceNumber = invoice.getInvoiceNumber();
+        afterCommit(() -> renderExecutor.submit(invoicePdfDTO, invoiceNumber, pdfPath -> {
+            pdfCache.invalidate(invoiceNumber);
+            invoiceRepository.updatePdfUrl(invoiceId, pdfPath);
+            // Se lee despues de guardar la ruta: una cancelacion que confirme antes ya se ve aqui,
+            // y una que confirme despues encuentra el archivo y lo estampa ella misma
+            if (Boolean.TRUE.equals(invoiceRepository.findIsCanceledById(invoiceId))) {
+                invoiceWatermarker.stampAfterCommit(invoiceNumber, pdfPath);
             }
-        }
-        throw new Exception("Fallo inesperado despues de reintentos.");
+        }));
     }
 
     /**
-     * Coordina la conversion de datos al formato DTO y la creacion fisica del archivo PDF.
+     * Coordina la conversion de datos al formato DTO y la creacion fisica del archivo PDF,
+     * que se renderiza en el pool dedicado escribiendo directamente sobre el almacenamiento.
      * * @param invoice Entidad de la factura.
-     * @return Ruta absoluta o relativa donde se almaceno el archivo.
-     * @throws Exception Si el contenido del PDF es nulo o falla el almacenamiento.
+     * @return Ruta relativa donde se almaceno el archivo.
+     * @throws Exception Si falla la generacion o el almacenamiento, o si el pool esta saturado.
      */
     private String generateInvoicePdfSafely(Invoice invoice) throws Exception {
         try {
             InvoicePdfDTO invoicePdfDTO = convertToInvoicePdfDTO(invoice);
-            byte[] pdfBytes = pdfGeneratorService.generateInvoicePdf(invoicePdfDTO);
+            String pdfPath = renderExecutor.render(invoicePdfDTO, invoice.getInvoiceNumber());
+            pdfCache.invalidate(invoice.getInvoiceNumber());
 
-            if (pdfBytes == null || pdfBytes.length == 0) {
+            if (pdfPath == null) {
+                throw new Exception("El servicio de facturas esta ocupado, intente nuevamente");
+            }
+            if (Files.size(Paths.get(pdfPath)) == 0) {
                 throw new Exception("El PDF generado esta vacio");
             }
-
-            return pdfGeneratorService.savePdfToStorage(pdfBytes, invoice.getInvoiceNumber());
+            return pdfPath;
         } catch (Exception e) {
             logger.error("Error en generateInvoicePdfSafely: {}", e.getMessage());
             throw new Exception("Fallo al generar el PDF: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Genera el XML de la factura junto a su PDF. Un fallo no impide la facturacion:
+     * el XML se vuelve a generar la primera vez que se solicita.
+     * * @param invoice Entidad de la factura.
+     */
+    private void generateInvoiceXmlSafely(Invoice invoice) {
+        try {
+            invoiceXmlWriter.saveXmlToStorage(convertToInvoicePdfDTO(invoice));
+        } catch (Exception e) {
+            logger.error("No se pudo generar el XML de la factura {}: {}", invoice.getInvoiceNumber(), e.getMessage());
+        }
+    }
+
     /**
      * Transforma una entidad Invoice y su orden asociada en un objeto de transferencia de datos (DTO)
      * optimizado para la generacion del documento PDF.
      * * @param invoice Entidad factura.
      * @return Objeto InvoicePdfDTO con informacion detallada de cliente y productos.
      */
-    private InvoicePdfDTO convertToInvoicePdfDTO(Invoice invoice) {
+    InvoicePdfDTO convertToInvoicePdfDTO(Invoice invoice) {
         logger.debug("Convirtiendo Invoice a DTO - ID: {}", invoice.getId());
 
         try {
@@ -178,7 +255,7 @@ public class Invoice_Service {
                 logger.warn("OrderDetails es nulo para la orden ID: {}. Se usara lista vacia.", order.getId());
             }
 
-            return new InvoicePdfDTO(
+            InvoicePdfDTO invoicePdfDTO = new InvoicePdfDTO(
                     invoice.getInvoiceNumber(),
                     invoice.getDate(),
                     paymentMethod,
@@ -191,6 +268,8 @@ public class Invoice_Service {
                     order.getTax(),
                     order.getFinalTotal()
             );
+            invoicePdfDTO.setCanceled(Boolean.TRUE.equals(invoice.getIsCanceled()));
+            return invoicePdfDTO;
 
         } catch (Exception e) {
             logger.error("Error en convertToInvoicePdfDTO: {}", e.getMessage(), e);
@@ -223,9 +302,10 @@ public class Invoice_Service {
     @Transactional
     public Invoice retryPdfGeneration(Integer orderId) throws Exception {
         Invoice invoice = getInvoiceForOrder(orderId);
+        pdfCache.invalidate(invoice.getInvoiceNumber());
         String newPdfPath = generateInvoicePdfSafely(invoice);
 
-        if (invoice.getPdfUrl() != null) {
+        if (invoice.getPdfUrl() != null && !invoice.getPdfUrl().equals(newPdfPath)) {
             try {
                 Files.deleteIfExists(Paths.get(invoice.getPdfUrl()));
             } catch (IOException e) {
@@ -238,7 +318,8 @@ public class Invoice_Service {
     }
 
     /**
-     * Marca una factura como cancelada y registra la fecha de cancelacion.
+     * Marca una factura como cancelada y registra la fecha de cancelacion. Al confirmar la
+     * transaccion, el PDF almacenado recibe la marca de agua ANULADA en segundo plano.
      * * @param orderId Identificador de la orden facturada.
      */
     @Transactional
@@ -248,9 +329,37 @@ public class Invoice_Service {
             invoice.setIsCanceled(true);
             invoice.setCancelationDate(LocalDateTime.now());
             invoiceRepository.save(invoice);
+            invoiceWatermarker.stampAfterCommit(invoice.getInvoiceNumber(), invoice.getPdfUrl());
         }
     }
 
+    /**
+     * Cancela en una sola transaccion las facturas de varias ordenes. Las ya canceladas y
+     * las ordenes sin factura se ignoran. Los PDFs se estampan en segundo plano al confirmar.
+     * * @param orderIds Identificadores de las ordenes facturadas.
+     * @return Cantidad de facturas canceladas.
+     */
+    @Transactional
+    public int cancelInvoices(Collection<Integer> orderIds) {
+        if (orderIds.isEmpty()) return 0;
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Invoice> canceled = new ArrayList<>();
+        for (Invoice invoice : invoiceRepository.findByOrderIdIn(orderIds)) {
+            if (Boolean.TRUE.equals(invoice.getIsCanceled())) continue;
+            invoice.setIsCanceled(true);
+            invoice.setCancelationDate(now);
+            canceled.add(invoice);
+        }
+        invoiceRepository.saveAll(canceled);
+
+        for (Invoice invoice : canceled) {
+            invoiceWatermarker.stampAfterCommit(invoice.getInvoiceNumber(), invoice.getPdfUrl());
+        }
+        logger.info("Facturas canceladas en lote: {} de {} solicitadas", canceled.size(), orderIds.size());
+        return canceled.size();
+    }
+
     /**
      * Recupera el archivo PDF y lo envia como adjunto por correo electronico.
      * * @param orderId Identificador de la orden.
@@ -260,7 +369,7 @@ public class Invoice_Service {
     @Transactional
     public void sendInvoiceByEmail(Integer orderId, String emailAddress) throws Exception {
         Invoice invoice = getInvoiceForOrder(orderId);
-        byte[] pdfBytes = Files.readAllBytes(Paths.get(invoice.getPdfUrl()));
+        byte[] pdfBytes = readPdfBytes(invoice);
         emailService.sendEmailWithAttachment(
                 emailAddress,
                 "Factura #" + invoice.getInvoiceNumber(),
@@ -277,10 +386,83 @@ public class Invoice_Service {
      * @throws RuntimeException Si no se encuentra ningun registro.
      */
     public Invoice getInvoiceForOrder(Integer orderId) {
-        return invoiceRepository.findByOrderId(orderId)
+        return findInvoiceForOrder(orderId)
                 .orElseThrow(() -> new RuntimeException("Factura no encontrada para orden: " + orderId));
     }
 
+    /**
+     * Busca la factura asociada a una orden sin lanzar excepciones cuando no existe.
+     * * @param orderId Identificador de la orden.
+     * @return Optional con la factura, vacio si la orden no esta facturada.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Invoice> findInvoiceForOrder(Integer orderId) {
+        Optional<Invoice> invoice = invoiceRepository.findByOrderId(orderId);
+        if (invoice.isPresent()) markInvoiced(orderId);
+        return invoice;
+    }
+
+    /**
+     * Busca en una sola consulta las facturas de varias ordenes, para listados.
+     * * @param orderIds Identificadores de las ordenes.
+     * @return Mapa de ID de orden a factura; las ordenes sin factura no aparecen.
+     */
+    @Transactional(readOnly = true)
+    public Map<Integer, Invoice> findInvoicesForOrders(Collection<Integer> orderIds) {
+        if (orderIds.isEmpty()) return Collections.emptyMap();
+
+        Map<Integer, Invoice> invoices = new HashMap<>();
+        for (Invoice invoice : invoiceRepository.findByOrderIdIn(orderIds)) {
+            Integer orderId = invoice.getOrder().getId();
+            invoices.put(orderId, invoice);
+            markInvoiced(orderId);
+        }
+        return invoices;
+    }
+
+    /**
+     * Indica si una orden ya tiene factura, consultando la base de datos solo cuando
+     * el indice en memoria aun no la conoce.
+     * * @param orderId Identificador de la orden.
+     * @return true si la orden esta facturada.
+     */
+    @Transactional(readOnly = true)
+    public boolean hasInvoice(Integer orderId) {
+        synchronized (invoicedOrders) {
+            if (invoicedOrders.get(orderId)) return true;
+        }
+        boolean exists = invoiceRepository.existsByOrderId(orderId);
+        if (exists) markInvoiced(orderId);
+        return exists;
+    }
+
+    private void markInvoiced(Integer orderId) {
+        synchronized (invoicedOrders) {
+            invoicedOrders.set(orderId);
+        }
+    }
+
+    /**
+     * Registra la orden como facturada cuando la transaccion confirma, para que un rollback
+     * no deje en el indice una factura que no existe.
+     */
+    private void markInvoicedAfterCommit(Integer orderId) {
+        afterCommit(() -> markInvoiced(orderId));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     /**
      * Obtiene el contenido binario del archivo PDF de la factura.
      * * @param orderId Identificador de la orden.
@@ -288,8 +470,120 @@ public class Invoice_Service {
      * @throws IOException Si ocurre un error en la lectura del archivo.
      */
     public byte[] getInvoicePdf(Integer orderId) throws IOException {
+        return readPdfBytes(getInvoiceForOrder(orderId));
+    }
+
+    /**
+     * Obtiene el archivo PDF de la factura como recurso, sin cargar su contenido en memoria
+     * salvo que ya este en la cache de PDFs recientes. Si el PDF aun no existe se renderiza.
+     * El ETag se deriva del numero de factura, el tamaño y la fecha de modificacion del archivo,
+     * por lo que cambia cada vez que el PDF se regenera.
+     * * @param orderId Identificador de la orden.
+     * @return InvoicePdfFileDTO con el recurso y sus metadatos de cache.
+     * @throws IOException Si el archivo no se puede generar o leer.
+     */
+    public InvoicePdfFileDTO getInvoicePdfFile(Integer orderId) throws IOException {
+        Invoice invoice = getInvoiceForOrder(orderId);
+
+        InvoicePdfCache.CachedPdf cached = pdfCache.get(invoice.getInvoiceNumber());
+        if (cached != null) {
+            byte[] content = cached.getContent();
+            return buildPdfFile(orderId, invoice, new ByteArrayResource(content),
+                    content.length, cached.getLastModified());
+        }
+
+        Path pdfPath = ensurePdfRendered(invoice);
+        BasicFileAttributes attributes = Files.readAttributes(pdfPath, BasicFileAttributes.class);
+        return buildPdfFile(orderId, invoice, new FileSystemResource(pdfPath),
+                attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Obtiene la ruta de la factura electronica XML, generandola si aun no existe. El XML incluye
+     * los datos personales del cliente: solo lo obtiene el dueño de la orden o un administrador.
+     * * @param orderId Identificador de la orden.
+     * @param user Usuario autenticado.
+     * @return Ruta del archivo XML.
+     * @throws RuntimeException Si la orden no tiene factura o pertenece a otro usuario (mismo mensaje).
+     * @throws IOException Si el archivo no se puede generar.
+     */
+    public Path getInvoiceXml(Integer orderId, Users user) throws IOException {
         Invoice invoice = getInvoiceForOrder(orderId);
-        return Files.readAllBytes(Paths.get(invoice.getPdfUrl()));
+        // Para otro usuario la factura "no existe": no se revela que la orden esta facturada
+        if (!isAdmin(user) && !invoice.getOrder().getUser().getId().equals(user.getId())) {
+            throw new RuntimeException("Factura no encontrada para orden: " + orderId);
+        }
+        Path xmlPath = Paths.get(PdfGeneratorService.storagePath(invoice.getInvoiceNumber(), ".xml"));
+        if (Files.exists(xmlPath)) return xmlPath;
+
+        logger.info("Generando XML bajo demanda para la factura {}", invoice.getInvoiceNumber());
+        return Paths.get(invoiceXmlWriter.saveXmlToStorage(convertToInvoicePdfDTO(invoice)));
+    }
+
+    // Mismo criterio que hasRole("ADMIN") en SecurityConfig
+    private static boolean isAdmin(Users user) {
+        return user.getAuthorities().stream().anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+    }
+
+    private InvoicePdfFileDTO buildPdfFile(Integer orderId, Invoice invoice, Resource resource,
+                                           long size, long lastModified) {
+        String eTag = "\"" + invoice.getInvoiceNumber() + "-" + Long.toHexString(size)
+                + "-" + Long.toHexString(lastModified) + "\"";
+        return new InvoicePdfFileDTO("factura_" + orderId + ".pdf", resource, size, lastModified, eTag);
+    }
+
+    /**
+     * Garantiza que la factura tenga su PDF en disco, renderizandolo si aun no se genero
+     * (renderizado diferido) o si el archivo ya no existe.
+     * * @param invoice Entidad de la factura.
+     * @return Ruta del archivo PDF.
+     * @throws IOException Si falla la generacion del PDF.
+     */
+    Path ensurePdfRendered(Invoice invoice) throws IOException {
+        if (invoice.getPdfUrl() != null) {
+            Path pdfPath = Paths.get(invoice.getPdfUrl());
+            if (Files.exists(pdfPath)) return pdfPath;
+            logger.warn("El archivo {} no existe, se regenerara", invoice.getPdfUrl());
+        }
+
+        logger.info("Renderizando PDF bajo demanda para la factura {}", invoice.getInvoiceNumber());
+        try {
+            invoice.setPdfUrl(generateInvoicePdfSafely(invoice));
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        invoiceRepository.save(invoice);
+        return Paths.get(invoice.getPdfUrl());
+    }
+
+    /**
+     * Lee el contenido del PDF priorizando la cache en memoria; lo que se lee de disco
+     * queda cacheado para accesos posteriores (por ejemplo, descargas tras un envio por correo).
+     * * @param invoice Entidad de la factura.
+     * @return Contenido del PDF.
+     * @throws IOException Si falla la generacion o lectura del archivo.
+     */
+    private byte[] readPdfBytes(Invoice invoice) throws IOException {
+        InvoicePdfCache.CachedPdf cached = pdfCache.get(invoice.getInvoiceNumber());
+        if (cached != null) return cached.getContent();
+
+        Path pdfPath = ensurePdfRendered(invoice);
+        byte[] pdfBytes = Files.readAllBytes(pdfPath);
+        pdfCache.put(invoice.getInvoiceNumber(), pdfBytes, Files.getLastModifiedTime(pdfPath).toMillis());
+        return pdfBytes;
+    }
+
+    /**
+     * Metricas del renderizado de PDFs: pool de renderizado, cache de PDFs en memoria
+     * y estampado de facturas anuladas.
+     * * @return Mapa con las metricas de cada componente.
+     */
+    public Map<String, Object> getRenderStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("renderPool", renderExecutor.getStats());
+        stats.put("pdfCache", pdfCache.getStats());
+        stats.put("watermarks", invoiceWatermarker.getStats());
+        return stats;
     }
 
     /**
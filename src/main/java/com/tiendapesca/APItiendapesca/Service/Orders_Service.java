@@ -5,17 +5,18 @@ import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
-import com.tiendapesca.APItiendapesca.Dtos.CartItemRespoDTO;
 import com.tiendapesca.APItiendapesca.Dtos.OrderDetailDTO;
 import com.tiendapesca.APItiendapesca.Dtos.OrderRequestDTO;
 import com.tiendapesca.APItiendapesca.Dtos.OrderResponseDTO;
@@ -26,10 +27,12 @@ import com.tiendapesca.APItiendapesca.Entities.OrderStatus;
 import com.tiendapesca.APItiendapesca.Entities.Orders;
 import com.tiendapesca.APItiendapesca.Entities.Product;
 import com.tiendapesca.APItiendapesca.Entities.Users;
+import com.tiendapesca.APItiendapesca.Events.ProductStockChangedEvent;
 import com.tiendapesca.APItiendapesca.Repository.OrderDetail_Repository;
 import com.tiendapesca.APItiendapesca.Repository.Orders_Repository;
 import com.tiendapesca.APItiendapesca.Repository.Product_Repository;
 import com.tiendapesca.APItiendapesca.Repository.Users_Repository;
+import com.tiendapesca.APItiendapesca.Security.AuthenticatedUserContext;
 
 /**
  * Servicio para gestionar operaciones relacionadas con órdenes de compra
@@ -47,6 +50,9 @@ public class Orders_Service {
     private final Product_Repository productRepository;
     private final Users_Repository userRepository;
     private final Invoice_Service invoiceService;
+    private final AuthenticatedUserContext userContext;
+    private final CartValidator cartValidator;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Constructor para inyección de dependencias
@@ -57,13 +63,19 @@ public class Orders_Service {
                           Cart_Service cartService,
                           Product_Repository productRepository,
                           Users_Repository userRepository,
-                          Invoice_Service invoiceService) {
+                          Invoice_Service invoiceService,
+                          AuthenticatedUserContext userContext,
+                          CartValidator cartValidator,
+                          ApplicationEventPublisher eventPublisher) {
         this.orderRepository = orderRepository;
         this.orderDetailRepository = orderDetailRepository;
         this.cartService = cartService;
         this.productRepository = productRepository;
         this.userRepository = userRepository;
         this.invoiceService = invoiceService;
+        this.userContext = userContext;
+        this.cartValidator = cartValidator;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -81,17 +93,21 @@ public class Orders_Service {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Usuario no autenticado");
         }
 
-        // Obtener items del carrito
-        List<CartItemRespoDTO> cartItems = cartService.getCartItems(user.getId());
-        if (cartItems.isEmpty()) {
+        // Validar el carrito con sus productos en una sola consulta (mismas reglas que /cart/validate)
+        CartValidator.CartValidation validation = cartValidator.validate(user.getId());
+        if (validation.getLines().isEmpty() && validation.getIssues().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El carrito está vacío");
         }
+        if (!validation.isValid()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, validation.getBlockingMessage());
+        }
 
-        logger.info("{} items en el carrito", cartItems.size());
+        List<CartValidator.Line> cartLines = validation.getLines();
+        logger.info("{} items en el carrito", cartLines.size());
 
         // Calcular totales
-        BigDecimal subtotal = cartItems.stream()
-                .map(item -> item.getUnitPrice().multiply(BigDecimal.valueOf(item.getQuantity())))
+        BigDecimal subtotal = cartLines.stream()
+                .map(CartValidator.Line::getSubtotal)
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
 
         BigDecimal taxRate = new BigDecimal("0.13");
@@ -115,20 +131,12 @@ public class Orders_Service {
         // Crear lista de OrderDetails antes de guardar
         List<OrderDetail> orderDetails = new ArrayList<>();
 
-        for (CartItemRespoDTO cartItem : cartItems) {
-            Product product = productRepository.findById(cartItem.getProductId())
-                    .orElseThrow(() -> new ResponseStatusException(
-                            HttpStatus.NOT_FOUND, "Producto no encontrado: " + cartItem.getProductId()));
-
-            // Verificar stock
-            if (product.getStock() < cartItem.getQuantity()) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                        "Stock insuficiente para el producto: " + product.getName());
-            }
+        // Los productos ya vienen cargados por la validacion: no se vuelven a consultar
+        for (CartValidator.Line cartLine : cartLines) {
+            Product product = cartLine.getProduct();
 
             // Calcular totales para el detalle
-            BigDecimal itemSubtotal = cartItem.getUnitPrice()
-                    .multiply(BigDecimal.valueOf(cartItem.getQuantity()));
+            BigDecimal itemSubtotal = cartLine.getSubtotal();
             BigDecimal itemTax = itemSubtotal.multiply(taxRate).setScale(2, RoundingMode.HALF_UP);
             BigDecimal itemTotal = itemSubtotal.add(itemTax).setScale(2, RoundingMode.HALF_UP);
 
@@ -136,8 +144,8 @@ public class Orders_Service {
             OrderDetail orderDetail = new OrderDetail();
             orderDetail.setOrder(order);  //
             orderDetail.setProduct(product);
-            orderDetail.setQuantity(cartItem.getQuantity());
-            orderDetail.setUnitPrice(cartItem.getUnitPrice());
+            orderDetail.setQuantity(cartLine.getQuantity());
+            orderDetail.setUnitPrice(cartLine.getUnitPrice());
             orderDetail.setSubtotal(itemSubtotal);
             orderDetail.setTax(itemTax);
             orderDetail.setTotal(itemTotal);
@@ -145,13 +153,18 @@ public class Orders_Service {
             orderDetails.add(orderDetail);
 
             // Actualizar stock del producto
-            product.setStock(product.getStock() - cartItem.getQuantity());
+            product.setStock(product.getStock() - cartLine.getQuantity());
             productRepository.save(product);
 
             logger.debug("Detalle creado - Producto: {}, Cantidad: {}, Subtotal: {}",
-                    product.getName(), cartItem.getQuantity(), itemSubtotal);
+                    product.getName(), cartLine.getQuantity(), itemSubtotal);
         }
 
+        // El catalogo cacheado muestra el stock anterior de estos productos
+        eventPublisher.publishEvent(new ProductStockChangedEvent(cartLines.stream()
+                .map(line -> line.getProduct().getId())
+                .collect(Collectors.toList())));
+
         // Establecer orderDetails en la orden
         order.setOrderDetails(orderDetails);
         logger.info("{} detalles asignados a la orden", orderDetails.size());
@@ -172,11 +185,11 @@ public class Orders_Service {
         try {
             logger.info("Generando factura para orden ID: {}", savedOrder.getId());
             Invoice invoice = invoiceService.generateAndSaveInvoice(savedOrder.getId());
-            logger.info("Factura PDF generada exitosamente. Número: {}, Archivo: {}",
-                    invoice.getInvoiceNumber(), invoice.getPdfUrl());
+            logger.info("Factura generada exitosamente. Número: {}. El PDF se renderiza al confirmar la orden.",
+                    invoice.getInvoiceNumber());
 
             // EMAIL DESHABILITADO TEMPORALMENTE
-            logger.info("Factura PDF creada exitosamente. El envío por email está deshabilitado temporalmente.");
+            logger.info("El envío por email está deshabilitado temporalmente.");
 
         } catch (Exception invoiceError) {
             logger.error("ERROR al generar factura: {}", invoiceError.getMessage());
@@ -199,15 +212,10 @@ public class Orders_Service {
         OrderResponseDTO response = convertToOrderResponseDTO(completeOrder);
 
         //AÑADIR INFORMACIÓN DE LA FACTURA A LA RESPUESTA
-        try {
-            Invoice invoice = invoiceService.getInvoiceForOrder(completeOrder.getId());
-            response.setInvoiceNumber(invoice.getInvoiceNumber());
-            response.setInvoiceDate(invoice.getDate());
-            response.setPdfUrl(invoice.getPdfUrl());
+        invoiceService.findInvoiceForOrder(completeOrder.getId()).ifPresentOrElse(invoice -> {
+            applyInvoiceInfo(response, invoice);
             logger.info("Información de factura añadida a la respuesta: {}", invoice.getInvoiceNumber());
-        } catch (Exception e) {
-            logger.warn("No se pudo añadir información de factura a la respuesta");
-        }
+        }, () -> logger.warn("No se pudo añadir información de factura a la respuesta"));
 
         return response;
     }
@@ -219,29 +227,17 @@ public class Orders_Service {
      */
     @Transactional(readOnly = true)
     public List<OrderResponseDTO> getUserOrders(Integer userId) {
-        Users user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuario no encontrado"));
-
+        // El usuario autenticado ya fue cargado por JWT_Filter; solo se valida si es otro
+        if (!userContext.isAuthenticatedAs(userId) && !userRepository.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Usuario no encontrado");
+        }
 
         List<Orders> orders = orderRepository.findByUserIdWithDetails(userId);
 
         logger.info("Obteniendo {} órdenes para usuario ID: {}", orders.size(), userId);
 
-        // Convertir a DTOs y añadir información de facturas
-        return orders.stream()
-                .map(order -> {
-                    OrderResponseDTO dto = convertToOrderResponseDTO(order);
-                    try {
-                        Invoice invoice = invoiceService.getInvoiceForOrder(order.getId());
-                        dto.setInvoiceNumber(invoice.getInvoiceNumber());
-                        dto.setInvoiceDate(invoice.getDate());
-                        dto.setPdfUrl(invoice.getPdfUrl());
-                    } catch (Exception e) {
-                        // Si no hay factura, no es un error grave
-                    }
-                    return dto;
-                })
-                .collect(Collectors.toList());
+        // Convertir a DTOs y añadir información de facturas (una sola consulta para todas)
+        return toResponsesWithInvoices(orders);
     }
 
     /**
@@ -269,14 +265,9 @@ public class Orders_Service {
         OrderResponseDTO response = convertToOrderResponseDTO(order);
 
         // Añadir información de la factura si existe
-        try {
-            Invoice invoice = invoiceService.getInvoiceForOrder(orderId);
-            response.setInvoiceNumber(invoice.getInvoiceNumber());
-            response.setInvoiceDate(invoice.getDate());
-            response.setPdfUrl(invoice.getPdfUrl());
-        } catch (Exception e) {
-            logger.debug("La orden {} no tiene factura asociada", orderId);
-        }
+        invoiceService.findInvoiceForOrder(orderId).ifPresentOrElse(
+                invoice -> applyInvoiceInfo(response, invoice),
+                () -> logger.debug("La orden {} no tiene factura asociada", orderId));
 
         return response;
     }
@@ -393,15 +384,18 @@ public class Orders_Service {
 
         // Devolver el stock a los productos
         if (order.getOrderDetails() != null) {
+            List<Integer> restockedIds = new ArrayList<>();
             for (OrderDetail detail : order.getOrderDetails()) {
                 Product product = detail.getProduct();
                 if (product != null) {
                     product.setStock(product.getStock() + detail.getQuantity());
                     productRepository.save(product);
+                    restockedIds.add(product.getId());
                     logger.debug("Stock devuelto para producto ID: {}, cantidad: {}",
                             product.getId(), detail.getQuantity());
                 }
             }
+            eventPublisher.publishEvent(new ProductStockChangedEvent(restockedIds));
         }
 
         // Actualizar estado de la orden
@@ -428,7 +422,7 @@ public class Orders_Service {
         logger.info("Obteniendo todas las órdenes. Total: {}", orders.size());
 
         // Para cada orden, cargar detalles si es necesario
-        return orders.stream()
+        List<Orders> loaded = orders.stream()
                 .map(order -> {
                     // Si no tiene detalles cargados, recargar con detalles
                     if (order.getOrderDetails() == null) {
@@ -437,22 +431,36 @@ public class Orders_Service {
                     }
                     return order;
                 })
+                .collect(Collectors.toList());
+
+        // Añadir información de factura si existe (una sola consulta para todas)
+        return toResponsesWithInvoices(loaded);
+    }
+
+    /**
+     * Convierte las órdenes a DTOs y añade la información de factura de las que la tienen,
+     * buscando todas las facturas en una sola consulta
+     */
+    private List<OrderResponseDTO> toResponsesWithInvoices(List<Orders> orders) {
+        Map<Integer, Invoice> invoices = invoiceService.findInvoicesForOrders(
+                orders.stream().map(Orders::getId).collect(Collectors.toList()));
+
+        return orders.stream()
                 .map(order -> {
                     OrderResponseDTO dto = convertToOrderResponseDTO(order);
-                    // Añadir información de factura si existe
-                    try {
-                        Invoice invoice = invoiceService.getInvoiceForOrder(order.getId());
-                        dto.setInvoiceNumber(invoice.getInvoiceNumber());
-                        dto.setInvoiceDate(invoice.getDate());
-                        dto.setPdfUrl(invoice.getPdfUrl());
-                    } catch (Exception e) {
-                        // No hay factura, continuar
-                    }
+                    Invoice invoice = invoices.get(order.getId());
+                    if (invoice != null) applyInvoiceInfo(dto, invoice);
                     return dto;
                 })
                 .collect(Collectors.toList());
     }
 
+    private void applyInvoiceInfo(OrderResponseDTO dto, Invoice invoice) {
+        dto.setInvoiceNumber(invoice.getInvoiceNumber());
+        dto.setInvoiceDate(invoice.getDate());
+        dto.setPdfUrl(invoice.getPdfUrl());
+    }
+
     /**
      * Actualiza el estado de una orden (para administradores)
      */
@@ -470,11 +478,9 @@ public class Orders_Service {
 
         // Si se completa la orden, generar factura si no existe
         if (status == OrderStatus.COMPLETED && oldStatus != OrderStatus.COMPLETED) {
-            try {
-                // Verificar si ya existe factura
-                invoiceService.getInvoiceForOrder(orderId);
+            if (invoiceService.hasInvoice(orderId)) {
                 logger.info("La orden ya tiene factura asociada");
-            } catch (Exception e) {
+            } else {
                 // No existe factura, generarla
                 try {
                     Invoice invoice = invoiceService.generateAndSaveInvoice(orderId);
@@ -4,18 +4,24 @@ import com.itextpdf.text.*;
 import com.itextpdf.text.pdf.*;
 import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
 import com.tiendapesca.APItiendapesca.Dtos.ProductItemDTO;
+import com.tiendapesca.APItiendapesca.Utils.ColonFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.core.io.ClassPathResource;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.math.BigDecimal;
+import java.util.HashMap;
 
 @Service
 public class PdfGeneratorService {
@@ -23,24 +29,37 @@ public class PdfGeneratorService {
     private static final Logger logger = LoggerFactory.getLogger(PdfGeneratorService.class);
     private static final String INVOICE_DIRECTORY = "invoices";
 
-    // Datos de la Empresa
-    private static final String COMPANY_NAME = "Kraken Lures";
-    private static final String COMPANY_ADDRESS = "Limón, Costa Rica";
-    private static final String COMPANY_PHONE = "+506 2222-5555";
-    private static final String COMPANY_EMAIL = "info@krakenlures.com";
+    // Datos de la Empresa (tambien usados como emisor en la factura electronica XML)
+    static final String COMPANY_NAME = "Kraken Lures";
+    static final String COMPANY_ADDRESS = "Limón, Costa Rica";
+    static final String COMPANY_PHONE = "+506 2222-5555";
+    static final String COMPANY_EMAIL = "info@krakenlures.com";
     private static final String COMPANY_WEBSITE = "www.krakenlures.com";
 
     private static final BaseColor PRIMARY_COLOR = new BaseColor(0, 51, 102);
 
+    // Marca de agua de facturas anuladas; la clave del diccionario Info evita estamparla dos veces
+    private static final String CANCELED_WATERMARK = "ANULADA";
+    private static final String CANCELED_INFO_KEY = "Anulada";
+
     private BaseFont robotoBaseFont = null;
     private BaseFont robotoBoldBaseFont = null;
     private Font normalRobotoFont;
     private Font boldRobotoFont;
     private Font titleRobotoFont;
     private Font smallRobotoFont;
+    private Font sectionFont;
+    private Font tableHeaderFont;
+    private Font companyFont;
+    private Font watermarkFont;
+
+    // Logo leido una sola vez del classpath; cada hilo de renderizado reutiliza su propia Image
+    private byte[] logoBytes;
+    private final ThreadLocal<Image> threadLogo = new ThreadLocal<>();
 
     public PdfGeneratorService() {
         initializeFonts();
+        loadLogo();
     }
 
     private void initializeFonts() {
@@ -60,6 +79,10 @@ public class PdfGeneratorService {
             boldRobotoFont = new Font(robotoBoldBaseFont, 10, Font.BOLD);
             titleRobotoFont = new Font(robotoBoldBaseFont, 24, Font.BOLD, PRIMARY_COLOR);
             smallRobotoFont = new Font(robotoBaseFont, 8);
+            sectionFont = new Font(robotoBoldBaseFont, 12, Font.BOLD, PRIMARY_COLOR);
+            tableHeaderFont = new Font(robotoBoldBaseFont, 10, Font.BOLD, BaseColor.WHITE);
+            companyFont = new Font(robotoBoldBaseFont, 12, Font.BOLD, PRIMARY_COLOR);
+            watermarkFont = new Font(robotoBoldBaseFont, 96, Font.BOLD, BaseColor.RED);
 
         } catch (Exception e) {
             logger.error("Error cargando fuentes: {}", e.getMessage());
@@ -67,17 +90,55 @@ public class PdfGeneratorService {
             normalRobotoFont = new Font(Font.FontFamily.HELVETICA, 10);
             boldRobotoFont = new Font(Font.FontFamily.HELVETICA, 10, Font.BOLD);
             titleRobotoFont = new Font(Font.FontFamily.HELVETICA, 24, Font.BOLD, PRIMARY_COLOR);
+            smallRobotoFont = new Font(Font.FontFamily.HELVETICA, 8);
+            sectionFont = new Font(Font.FontFamily.HELVETICA, 12, Font.BOLD, PRIMARY_COLOR);
+            tableHeaderFont = new Font(Font.FontFamily.HELVETICA, 10, Font.BOLD, BaseColor.WHITE);
+            companyFont = new Font(Font.FontFamily.HELVETICA, 12, Font.BOLD, PRIMARY_COLOR);
+            watermarkFont = new Font(Font.FontFamily.HELVETICA, 96, Font.BOLD, BaseColor.RED);
+        }
+    }
+
+    private void loadLogo() {
+        try {
+            logoBytes = new ClassPathResource("static/img/logoKraken.png").getInputStream().readAllBytes();
+        } catch (IOException e) {
+            logger.error("Error cargando logo: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Devuelve la imagen del logo del hilo actual, creandola la primera vez.
+     * Image no es segura para uso concurrente, por eso no se comparte entre hilos.
+     */
+    private Image getLogo() throws IOException, BadElementException {
+        Image logo = threadLogo.get();
+        if (logo == null && logoBytes != null) {
+            logo = Image.getInstance(logoBytes);
+            logo.scaleToFit(70, 70);
+            threadLogo.set(logo);
         }
+        return logo;
     }
 
     public byte[] generateInvoicePdf(InvoicePdfDTO invoiceDto) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        generateInvoicePdf(invoiceDto, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Renderiza la factura escribiendo directamente sobre el flujo indicado, sin buffer intermedio.
+     * El flujo no se cierra.
+     */
+    public void generateInvoicePdf(InvoicePdfDTO invoiceDto, OutputStream outputStream) {
         if (robotoBaseFont == null) initializeFonts();
         Document document = new Document(PageSize.A4, 40, 40, 80, 40);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
         try {
             PdfWriter writer = PdfWriter.getInstance(document, outputStream);
-            writer.setPageEvent(new InvoicePageEventHandler());
+            writer.setCloseStream(false);
+            writer.setPageEvent(new InvoicePageEventHandler(invoiceDto.isCanceled()));
+            if (invoiceDto.isCanceled()) document.addHeader(CANCELED_INFO_KEY, "true");
             document.open();
 
             addInvoiceHeader(document);
@@ -88,21 +149,187 @@ public class PdfGeneratorService {
             addTermsAndConditions(document);
 
             document.close();
-            return outputStream.toByteArray();
+        } catch (Exception e) {
+            throw new RuntimeException("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Renderiza un estado de cuenta con varias facturas en un solo documento.
+     * Las facturas se consumen una a una del iterable y cada pagina completa se escribe
+     * al flujo, por lo que la memoria no depende de la cantidad de facturas. El flujo no se cierra.
+     * @param customerName Nombre del cliente.
+     * @param customerEmail Correo del cliente.
+     * @param from Fecha inicial del periodo.
+     * @param to Fecha final del periodo.
+     * @param invoices Facturas del periodo, en orden de emision.
+     * @param outputStream Flujo de salida.
+     */
+    public void generateStatementPdf(String customerName, String customerEmail, LocalDate from, LocalDate to,
+                                     Iterable<InvoicePdfDTO> invoices, OutputStream outputStream) {
+        if (robotoBaseFont == null) initializeFonts();
+        Document document = new Document(PageSize.A4, 40, 40, 80, 40);
+        DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, outputStream);
+            writer.setCloseStream(false);
+            writer.setPageEvent(new InvoicePageEventHandler(false));
+            document.open();
+
+            Paragraph title = new Paragraph("ESTADO DE CUENTA", titleRobotoFont);
+            title.setAlignment(Element.ALIGN_CENTER);
+            title.setSpacingAfter(20f);
+            document.add(title);
+
+            PdfPTable header = new PdfPTable(2);
+            header.setWidthPercentage(100);
+            addInfoRow(header, "Cliente:", customerName);
+            addInfoRow(header, "Email:", customerEmail);
+            addInfoRow(header, "Periodo:", from.format(dateFormat) + " - " + to.format(dateFormat));
+            document.add(header);
+
+            int count = 0;
+            BigDecimal subtotal = BigDecimal.ZERO;
+            BigDecimal tax = BigDecimal.ZERO;
+            BigDecimal total = BigDecimal.ZERO;
+            for (InvoicePdfDTO invoiceDto : invoices) {
+                document.add(new Paragraph("\nFACTURA " + invoiceDto.getInvoiceNumber(), sectionFont));
+                addInvoiceInfo(document, invoiceDto);
+                addProductsTable(document, invoiceDto);
+                addTotalsSection(document, invoiceDto);
+
+                count++;
+                subtotal = subtotal.add(invoiceDto.getSubtotal());
+                tax = tax.add(invoiceDto.getTax());
+                total = total.add(invoiceDto.getTotal());
+            }
+
+            document.add(new Paragraph("\nRESUMEN DEL PERIODO", sectionFont));
+            PdfPTable summary = new PdfPTable(2);
+            summary.setWidthPercentage(40);
+            summary.setHorizontalAlignment(Element.ALIGN_RIGHT);
+            PdfPCell countLabel = new PdfPCell(new Phrase("Facturas:", boldRobotoFont));
+            countLabel.setBorder(Rectangle.NO_BORDER);
+            countLabel.setHorizontalAlignment(Element.ALIGN_RIGHT);
+            summary.addCell(countLabel);
+            PdfPCell countValue = new PdfPCell(new Phrase(String.valueOf(count), normalRobotoFont));
+            countValue.setBorder(Rectangle.NO_BORDER);
+            countValue.setHorizontalAlignment(Element.ALIGN_RIGHT);
+            summary.addCell(countValue);
+            addTotalRow(summary, "Subtotal:", subtotal, boldRobotoFont);
+            addTotalRow(summary, "Impuestos:", tax, boldRobotoFont);
+            addTotalRow(summary, "TOTAL:", total, companyFont);
+            document.add(summary);
+
+            document.close();
         } catch (Exception e) {
             throw new RuntimeException("Error: " + e.getMessage());
         }
     }
 
     public String savePdfToStorage(byte[] pdfBytes, String invoiceNumber) throws IOException {
+        return writeToStorage(invoiceNumber, ".pdf", out -> out.write(pdfBytes));
+    }
+
+    /**
+     * Renderiza la factura directamente sobre su archivo en el almacenamiento.
+     * @return Ruta relativa del archivo generado.
+     */
+    public String renderPdfToStorage(InvoicePdfDTO invoiceDto, String invoiceNumber) throws IOException {
+        return writeToStorage(invoiceNumber, ".pdf", out -> generateInvoicePdf(invoiceDto, out));
+    }
+
+    /**
+     * Agrega la marca de agua ANULADA a un PDF ya generado sin volver a renderizarlo.
+     * El PDF se abre en lectura parcial (los objetos se leen del archivo bajo demanda) y el
+     * estampado se agrega como revision incremental: el contenido original se copia tal cual
+     * y solo se escriben al final las paginas modificadas. El resultado reemplaza al original
+     * de forma atomica.
+     * @param pdfUrl Ruta del PDF.
+     * @return false si el PDF ya tenia la marca de agua.
+     */
+    public boolean stampCanceledWatermark(String pdfUrl) throws IOException {
+        Path filePath = Paths.get(pdfUrl);
+        Path tempPath = Files.createTempFile(filePath.toAbsolutePath().getParent(),
+                filePath.getFileName().toString(), ".tmp");
+        try {
+            PdfReader reader = new PdfReader(filePath.toString(), null, true);
+            try {
+                if ("true".equals(reader.getInfo().get(CANCELED_INFO_KEY))) {
+                    return false;
+                }
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+                    PdfStamper stamper = new PdfStamper(reader, out, '\0', true);
+                    for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+                        drawCanceledWatermark(stamper.getOverContent(page), reader.getPageSizeWithRotation(page));
+                    }
+                    HashMap<String, String> info = new HashMap<>();
+                    info.put(CANCELED_INFO_KEY, "true");
+                    stamper.setMoreInfo(info);
+                    stamper.close();
+                }
+            } finally {
+                reader.close();
+            }
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (DocumentException e) {
+            throw new IOException("Error al estampar la factura anulada: " + e.getMessage(), e);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private void drawCanceledWatermark(PdfContentByte cb, Rectangle page) {
+        cb.saveState();
+        PdfGState state = new PdfGState();
+        state.setFillOpacity(0.25f);
+        cb.setGState(state);
+        ColumnText.showTextAligned(cb, Element.ALIGN_CENTER, new Phrase(CANCELED_WATERMARK, watermarkFont),
+                (page.getLeft() + page.getRight()) / 2, (page.getBottom() + page.getTop()) / 2, 45);
+        cb.restoreState();
+    }
+
+    /**
+     * Ruta relativa del documento de una factura con la extension indicada (.pdf, .xml).
+     */
+    static String storagePath(String invoiceNumber, String extension) {
+        return INVOICE_DIRECTORY + "/" + storageFileName(invoiceNumber, extension);
+    }
+
+    private static String storageFileName(String invoiceNumber, String extension) {
+        return "factura_" + invoiceNumber.replaceAll("[^a-zA-Z0-9.-]", "_") + extension;
+    }
+
+    /**
+     * Escribe un documento de la factura en el almacenamiento de forma atomica.
+     * @return Ruta relativa del archivo generado.
+     */
+    String writeToStorage(String invoiceNumber, String extension, StorageWriter storageWriter) throws IOException {
         Path directory = Paths.get(INVOICE_DIRECTORY);
         if (!Files.exists(directory)) Files.createDirectories(directory);
-        String fileName = "factura_" + invoiceNumber.replaceAll("[^a-zA-Z0-9.-]", "_") + ".pdf";
+        String fileName = storageFileName(invoiceNumber, extension);
         Path filePath = directory.resolve(fileName);
-        Files.write(filePath, pdfBytes);
+        // Se escribe en un temporal y se mueve de forma atomica para que una lectura
+        // concurrente (renderizado bajo demanda) nunca vea un archivo a medio escribir
+        Path tempPath = Files.createTempFile(directory, fileName, ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPath))) {
+                storageWriter.write(out);
+            }
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
         return INVOICE_DIRECTORY + "/" + fileName;
     }
 
+    @FunctionalInterface
+    interface StorageWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
     // ========== METODOS DE DIBUJO ==========
 
     private void addInvoiceHeader(Document document) throws DocumentException {
@@ -122,7 +349,7 @@ public class PdfGeneratorService {
     }
 
     private void addCustomerInfo(Document document, InvoicePdfDTO invoiceDto) throws DocumentException {
-        document.add(new Paragraph("\nINFORMACIÓN DEL CLIENTE", new Font(robotoBoldBaseFont, 12, Font.BOLD, PRIMARY_COLOR)));
+        document.add(new Paragraph("\nINFORMACIÓN DEL CLIENTE", sectionFont));
         PdfPTable table = new PdfPTable(2);
         table.setWidthPercentage(100);
         addInfoRow(table, "Nombre:", invoiceDto.getCustomerName());
@@ -139,7 +366,7 @@ public class PdfGeneratorService {
 
         String[] headers = {"Producto", "Precio Unitario", "Cantidad", "Subtotal", "Impuesto"};
         for (String h : headers) {
-            PdfPCell cell = new PdfPCell(new Phrase(h, new Font(robotoBoldBaseFont, 10, Font.BOLD, BaseColor.WHITE)));
+            PdfPCell cell = new PdfPCell(new Phrase(h, tableHeaderFont));
             cell.setBackgroundColor(PRIMARY_COLOR);
             cell.setHorizontalAlignment(Element.ALIGN_CENTER);
             table.addCell(cell);
@@ -161,7 +388,7 @@ public class PdfGeneratorService {
         table.setHorizontalAlignment(Element.ALIGN_RIGHT);
         addTotalRow(table, "Subtotal:", invoiceDto.getSubtotal(), boldRobotoFont);
         addTotalRow(table, "Impuesto (13%):", invoiceDto.getTax(), boldRobotoFont);
-        addTotalRow(table, "TOTAL:", invoiceDto.getTotal(), new Font(robotoBoldBaseFont, 12, Font.BOLD, PRIMARY_COLOR));
+        addTotalRow(table, "TOTAL:", invoiceDto.getTotal(), companyFont);
         document.add(table);
     }
 
@@ -172,9 +399,8 @@ public class PdfGeneratorService {
 
     // ========== AUXILIARES ==========
 
-    private PdfPCell createCurrencyCell(BigDecimal amount) {
-        String formatted = String.format("%,.2f", amount);
-        PdfPCell cell = new PdfPCell(new Phrase("₡ " + formatted, normalRobotoFont));
+    PdfPCell createCurrencyCell(BigDecimal amount) {
+        PdfPCell cell = new PdfPCell(new Phrase(ColonFormatter.formatWithSymbol(amount), normalRobotoFont));
         cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
         return cell;
     }
@@ -199,25 +425,33 @@ public class PdfGeneratorService {
     }
 
     // ========== TU CLASE DE EVENTOS INTEGRADA ==========
-    private class InvoicePageEventHandler extends PdfPageEventHelper {
+    class InvoicePageEventHandler extends PdfPageEventHelper {
+        private final boolean canceled;
+
+        InvoicePageEventHandler(boolean canceled) {
+            this.canceled = canceled;
+        }
+
         @Override
         public void onEndPage(PdfWriter writer, Document document) {
             PdfContentByte cb = writer.getDirectContent();
             try {
-                // Logo (Usando ClassPathResource para mayor compatibilidad)
-                Image logo = Image.getInstance(new ClassPathResource("static/img/logoKraken.png").getURL());
-                logo.scaleToFit(70, 70);
-                logo.setAbsolutePosition(document.left(), document.top() + 15);
-                cb.addImage(logo);
+                if (canceled) {
+                    drawCanceledWatermark(cb, document.getPageSize());
+                }
 
-                // Datos de la Empresa (Lado derecho)
-                Font companyFont = new Font(robotoBoldBaseFont, 12, Font.BOLD, PRIMARY_COLOR);
-                Font infoFont = new Font(robotoBaseFont, 8);
+                // Logo (reutilizado por hilo, se escribe una sola vez por documento)
+                Image logo = getLogo();
+                if (logo != null) {
+                    logo.setAbsolutePosition(document.left(), document.top() + 15);
+                    cb.addImage(logo);
+                }
 
+                // Datos de la Empresa (Lado derecho)
                 ColumnText.showTextAligned(cb, Element.ALIGN_RIGHT, new Phrase(COMPANY_NAME, companyFont), document.right(), document.top() + 70, 0);
-                ColumnText.showTextAligned(cb, Element.ALIGN_RIGHT, new Phrase(COMPANY_ADDRESS, infoFont), document.right(), document.top() + 58, 0);
-                ColumnText.showTextAligned(cb, Element.ALIGN_RIGHT, new Phrase("Tel: " + COMPANY_PHONE, infoFont), document.right(), document.top() + 48, 0);
-                ColumnText.showTextAligned(cb, Element.ALIGN_RIGHT, new Phrase(COMPANY_WEBSITE, infoFont), document.right(), document.top() + 38, 0);
+                ColumnText.showTextAligned(cb, Element.ALIGN_RIGHT, new Phrase(COMPANY_ADDRESS, smallRobotoFont), document.right(), document.top() + 58, 0);
+                ColumnText.showTextAligned(cb, Element.ALIGN_RIGHT, new Phrase("Tel: " + COMPANY_PHONE, smallRobotoFont), document.right(), document.top() + 48, 0);
+                ColumnText.showTextAligned(cb, Element.ALIGN_RIGHT, new Phrase(COMPANY_WEBSITE, smallRobotoFont), document.right(), document.top() + 38, 0);
 
                 // Línea azul
                 cb.setColorStroke(PRIMARY_COLOR);
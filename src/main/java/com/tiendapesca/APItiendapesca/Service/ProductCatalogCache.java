@@ -0,0 +1,235 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Entities.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Cache de lectura del catalogo: productos por ID, listados por categoria, paginas de
+ * /products/get y productos destacados. Cada entrada vence a los product.catalog.cache.ttl-seconds
+ * segundos y la cantidad de entradas esta limitada.
+ *
+ * Las lecturas no toman bloqueos, asi el catalogo escala con los procesadores y no con las
+ * conexiones a la base de datos. Los cambios de productos (crear, modificar, eliminar) descartan
+ * el producto y todos los listados; los cambios de stock del checkout solo descartan el producto
+ * y los listados que lo contienen.
+ *
+ * Cada invalidacion incrementa un contador de version; un valor leido de la base de datos solo
+ * se guarda si no hubo invalidaciones mientras se leia, para no cachear datos obsoletos.
+ */
+@Component
+public class ProductCatalogCache {
+
+    private static final String PRODUCT = "product:";
+    private static final String CATEGORY = "category:";
+    private static final String PAGE = "page:";
+    private static final String FEATURED = "featured";
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ProductCatalogCache(@Value("${product.catalog.cache.enabled:true}") boolean enabled,
+                               @Value("${product.catalog.cache.ttl-seconds:300}") long ttlSeconds,
+                               @Value("${product.catalog.cache.max-entries:2000}") int maxEntries) {
+        this.enabled = enabled;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Producto por ID. El cargador puede devolver null (producto inexistente), que no se cachea.
+     */
+    public Product getProduct(int productId, Supplier<Product> loader) {
+        return get(PRODUCT + productId, loader, product -> new int[]{product.getId()});
+    }
+
+    /**
+     * Productos de una categoria.
+     */
+    public List<Product> getCategory(int categoryId, Supplier<List<Product>> loader) {
+        return get(CATEGORY + categoryId, loader, ProductCatalogCache::idsOf);
+    }
+
+    /**
+     * Pagina del listado general de productos.
+     */
+    public Page<Product> getPage(int page, int size, Supplier<Page<Product>> loader) {
+        return get(PAGE + page + ":" + size, loader, result -> idsOf(result.getContent()));
+    }
+
+    /**
+     * Productos destacados.
+     */
+    public List<Product> getFeatured(Supplier<List<Product>> loader) {
+        return get(FEATURED, loader, ProductCatalogCache::idsOf);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(String key, Supplier<T> loader, Function<T, int[]> productIds) {
+        if (!enabled) {
+            return loader.get();
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.expiresAt > now) {
+                hits.increment();
+                return (T) entry.value;
+            }
+            expirations.increment();
+            entries.remove(key, entry);
+        }
+        misses.increment();
+
+        long loadedVersion = version.get();
+        T value = loader.get();
+        if (value != null) {
+            Entry loaded = new Entry(value, productIds.apply(value), now + ttlMillis);
+            entries.put(key, loaded);
+            // Si hubo una invalidacion durante la lectura el valor puede estar obsoleto
+            if (version.get() != loadedVersion) {
+                entries.remove(key, loaded);
+            } else if (entries.size() > maxEntries) {
+                evict();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Descarta un producto y todos los listados, por ejemplo al crear, modificar o eliminar un
+     * producto: puede cambiar de categoria o desplazar las paginas.
+     */
+    public void invalidateProduct(int productId) {
+        version.incrementAndGet();
+        invalidations.increment();
+        entries.remove(PRODUCT + productId);
+        entries.keySet().removeIf(key -> !key.startsWith(PRODUCT));
+    }
+
+    /**
+     * Descarta los productos indicados y solo los listados que contienen alguno de ellos, por
+     * ejemplo cuando el checkout o una cancelacion cambian su stock.
+     */
+    public void invalidateProducts(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) return;
+        version.incrementAndGet();
+        invalidations.increment();
+        entries.values().removeIf(entry -> entry.containsAny(productIds));
+    }
+
+    /**
+     * Descarta los productos destacados cuando la transaccion actual confirme, al recalcularlos.
+     */
+    public void invalidateFeaturedAfterCommit() {
+        Runnable invalidate = () -> {
+            version.incrementAndGet();
+            invalidations.increment();
+            entries.remove(FEATURED);
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidate.run();
+            }
+        });
+    }
+
+    /**
+     * Libera espacio: primero las entradas vencidas y, si no alcanza, las que vencen antes.
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+        int excess = entries.size() - maxEntries;
+        if (excess <= 0) return;
+
+        // Las entradas que vencen antes son las cargadas hace mas tiempo
+        List<Map.Entry<String, Entry>> oldest = entries.entrySet().stream()
+                .sorted((a, b) -> Long.compare(a.getValue().expiresAt, b.getValue().expiresAt))
+                .limit(excess)
+                .collect(Collectors.toList());
+        for (Map.Entry<String, Entry> candidate : oldest) {
+            if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static int[] idsOf(List<Product> products) {
+        int[] ids = new int[products.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = products.get(i).getId();
+        }
+        return ids;
+    }
+
+    /**
+     * Metricas de la cache: aciertos, fallos, vencimientos, desalojos e invalidaciones.
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("expirations", expirations.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    /**
+     * Valor cacheado con los IDs de los productos que contiene y su vencimiento.
+     */
+    private static final class Entry {
+        private final Object value;
+        private final int[] productIds;
+        private final long expiresAt;
+
+        Entry(Object value, int[] productIds, long expiresAt) {
+            this.value = value;
+            this.productIds = productIds;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean containsAny(Collection<Integer> ids) {
+            for (int productId : productIds) {
+                if (ids.contains(productId)) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.ProductSearchResultDTO;
+import com.tiendapesca.APItiendapesca.Entities.Categorie;
+import com.tiendapesca.APItiendapesca.Entities.Product;
+import com.tiendapesca.APItiendapesca.Repository.Product_Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Indice invertido en memoria para la busqueda de productos por nombre, marca, categoria y
+ * descripcion. Reemplaza el LIKE '%texto%' de la base de datos, que recorre toda la tabla.
+ *
+ * Los textos se normalizan sin tildes ni mayusculas (cañas = canas), la ultima palabra de la
+ * consulta se completa por prefijo para autocompletar, y los resultados se ordenan con BM25,
+ * pesando mas las coincidencias en el nombre que en la descripcion. Todas las palabras de la
+ * consulta deben aparecer en el producto.
+ *
+ * El indice se construye al iniciar la aplicacion y luego se actualiza con los eventos de
+ * creacion, modificacion y eliminacion de productos.
+ */
+@Component
+public class ProductSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "al", "con", "de", "del", "el", "en", "la", "las", "lo", "los",
+            "o", "para", "por", "se", "su", "sus", "un", "una", "unos", "unas", "y");
+
+    // Peso de cada campo: una coincidencia en el nombre vale mas que en la descripcion
+    private static final float NAME_WEIGHT = 3f;
+    private static final float BRAND_WEIGHT = 2f;
+    private static final float CATEGORY_WEIGHT = 1.5f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+
+    // Parametros de BM25 y penalizacion de las palabras completadas por prefijo
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double PREFIX_BOOST = 0.8;
+
+    private final Product_Repository productRepository;
+    private final int batchSize;
+    private final int maxPrefixTerms;
+    private final int minPrefixLength;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final HashMap<Integer, Doc> docs = new HashMap<>();
+    // Nombre de cada categoria, para productos que llegan solo con el ID de su categoria
+    private final HashMap<Integer, String> categoryNames = new HashMap<>();
+    private double totalLength = 0;
+
+    // Productos modificados por eventos mientras se construye el indice
+    private final Set<Integer> changedDuringBuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready = false;
+
+    public ProductSearchIndex(Product_Repository productRepository,
+                              @Value("${product.search.batch-size:1000}") int batchSize,
+                              @Value("${product.search.max-prefix-terms:20}") int maxPrefixTerms,
+                              @Value("${product.search.min-prefix-length:2}") int minPrefixLength) {
+        this.productRepository = productRepository;
+        this.batchSize = batchSize;
+        this.maxPrefixTerms = maxPrefixTerms;
+        this.minPrefixLength = minPrefixLength;
+    }
+
+    /**
+     * Indica si el indice termino de construirse. Mientras tanto la busqueda usa la base de datos.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Construye el indice leyendo los productos por paginas ordenadas por ID.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try {
+            int lastId = 0;
+            while (true) {
+                List<Product> page = productRepository.findWithCategorieAfter(lastId, PageRequest.of(0, batchSize));
+                if (page.isEmpty()) break;
+                lastId = page.get(page.size() - 1).getId();
+                count += page.size();
+
+                lock.writeLock().lock();
+                try {
+                    for (Product product : page) {
+                        // Un evento ya dejo la version mas reciente de este producto
+                        if (!changedDuringBuild.contains(product.getId())) {
+                            index(product);
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            ready = true;
+            changedDuringBuild.clear();
+            logger.info("Indice de busqueda construido: {} productos y {} terminos en {} ms",
+                    count, terms.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("Error al construir el indice de busqueda, se usara la base de datos: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Agrega o reemplaza un producto en el indice.
+     */
+    public void put(Product product) {
+        lock.writeLock().lock();
+        try {
+            if (!ready) changedDuringBuild.add(product.getId());
+            index(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita un producto del indice.
+     */
+    public void remove(int productId) {
+        lock.writeLock().lock();
+        try {
+            if (!ready) changedDuringBuild.add(productId);
+            unindex(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca productos que contengan todas las palabras de la consulta, la ultima como prefijo.
+     * @param query Texto ingresado por el usuario.
+     * @param limit Cantidad maxima de resultados.
+     * @return Productos ordenados de mayor a menor relevancia.
+     */
+    public List<ProductSearchResultDTO> search(String query, int limit) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (docs.isEmpty()) {
+                return List.of();
+            }
+            double avgLength = totalLength / docs.size();
+            ScoreMap scores = null;
+            for (int i = 0; i < tokens.size(); i++) {
+                boolean prefix = i == tokens.size() - 1;
+                scores = scoreToken(tokens.get(i), prefix, avgLength, scores);
+                if (scores.size == 0) {
+                    return List.of();
+                }
+            }
+            return topResults(scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Puntaje de una palabra de la consulta en cada producto que la contiene. Si hay puntajes de
+     * palabras anteriores, solo se consideran esos productos y se suman.
+     */
+    private ScoreMap scoreToken(String token, boolean prefix, double avgLength, ScoreMap previous) {
+        Postings exact = terms.get(token);
+        List<Postings> expansions = prefix && token.length() >= minPrefixLength ? expandPrefix(token) : List.of();
+
+        // Se dimensiona de entrada para no redistribuir mientras se suman los terminos
+        int expected = previous != null ? previous.size : (exact != null ? exact.size : 0);
+        if (previous == null) {
+            for (Postings postings : expansions) expected += postings.size;
+        }
+        ScoreMap scores = new ScoreMap(Math.min(expected, docs.size()));
+        if (exact != null) {
+            accumulate(scores, exact, 1.0, avgLength, previous);
+        }
+        for (Postings postings : expansions) {
+            accumulate(scores, postings, PREFIX_BOOST, avgLength, previous);
+        }
+        return scores;
+    }
+
+    private void accumulate(ScoreMap scores, Postings postings, double boost, double avgLength,
+                            ScoreMap previous) {
+        int n = docs.size();
+        double idf = Math.log(1 + (n - postings.size + 0.5) / (postings.size + 0.5));
+        for (int i = 0; i < postings.size; i++) {
+            int productId = postings.ids[i];
+            double base = 0;
+            if (previous != null) {
+                base = previous.get(productId);
+                if (Double.isNaN(base)) continue;
+            }
+            double tf = postings.weights[i];
+            double norm = K1 * (1 - B + B * postings.lengths[i] / avgLength);
+            double score = boost * idf * tf * (K1 + 1) / (tf + norm);
+            // Si la palabra coincide con varios terminos del producto, vale el mejor
+            scores.putMax(productId, base + score);
+        }
+    }
+
+    /**
+     * Terminos que empiezan con el prefijo (sin incluir el termino exacto). Si son demasiados,
+     * se usan los que aparecen en mas productos.
+     */
+    private List<Postings> expandPrefix(String prefix) {
+        List<Postings> expansions = new ArrayList<>(
+                terms.subMap(prefix, false, prefix + Character.MAX_VALUE, false).values());
+        if (expansions.size() > maxPrefixTerms) {
+            expansions.sort((a, b) -> Integer.compare(b.size, a.size));
+            expansions = expansions.subList(0, maxPrefixTerms);
+        }
+        return expansions;
+    }
+
+    private List<ProductSearchResultDTO> topResults(ScoreMap scores, int limit) {
+        // Mejores resultados ordenados de mayor a menor; la pagina es corta, basta con insercion
+        int[] topIds = new int[Math.min(limit, scores.size)];
+        double[] topScores = new double[topIds.length];
+        int count = 0;
+        for (int slot = 0; slot < scores.keys.length; slot++) {
+            if (!scores.used[slot]) continue;
+            int productId = scores.keys[slot];
+            double score = scores.values[slot];
+            if (count == topIds.length && !ranksAbove(score, productId, topScores[count - 1], topIds[count - 1])) {
+                continue;
+            }
+            int pos = count == topIds.length ? count - 1 : count++;
+            while (pos > 0 && ranksAbove(score, productId, topScores[pos - 1], topIds[pos - 1])) {
+                topIds[pos] = topIds[pos - 1];
+                topScores[pos] = topScores[pos - 1];
+                pos--;
+            }
+            topIds[pos] = productId;
+            topScores[pos] = score;
+        }
+
+        ProductSearchResultDTO[] results = new ProductSearchResultDTO[count];
+        for (int i = 0; i < count; i++) {
+            Doc doc = docs.get(topIds[i]);
+            results[i] = new ProductSearchResultDTO(topIds[i], doc.name, doc.brand, doc.price,
+                    doc.imageUrl, doc.category, topScores[i]);
+        }
+        return Arrays.asList(results);
+    }
+
+    // En empate gana el producto mas reciente (mayor ID)
+    private static boolean ranksAbove(double score, int productId, double otherScore, int otherId) {
+        return score > otherScore || (score == otherScore && productId > otherId);
+    }
+
+    // Debe llamarse con el bloqueo de escritura tomado
+    private void index(Product product) {
+        unindex(product.getId());
+
+        String category = null;
+        Categorie categorie = product.getCategorie();
+        if (categorie != null) {
+            category = categorie.getName();
+            if (category != null) {
+                categoryNames.put(categorie.getId(), category);
+            } else {
+                category = categoryNames.get(categorie.getId());
+            }
+        }
+
+        Map<String, Float> weights = new HashMap<>();
+        float length = addField(weights, product.getName(), NAME_WEIGHT)
+                + addField(weights, product.getBrand(), BRAND_WEIGHT)
+                + addField(weights, category, CATEGORY_WEIGHT)
+                + addField(weights, product.getDescription(), DESCRIPTION_WEIGHT);
+
+        String[] docTerms = new String[weights.size()];
+        int i = 0;
+        for (Map.Entry<String, Float> entry : weights.entrySet()) {
+            terms.computeIfAbsent(entry.getKey(), term -> new Postings())
+                    .add(product.getId(), entry.getValue(), length);
+            docTerms[i++] = entry.getKey();
+        }
+        docs.put(product.getId(), new Doc(product, category, docTerms, length));
+        totalLength += length;
+    }
+
+    // Debe llamarse con el bloqueo de escritura tomado
+    private void unindex(int productId) {
+        Doc doc = docs.remove(productId);
+        if (doc == null) return;
+        for (String term : doc.terms) {
+            Postings postings = terms.get(term);
+            if (postings == null) continue;
+            postings.remove(productId);
+            if (postings.size == 0) terms.remove(term);
+        }
+        totalLength -= doc.length;
+    }
+
+    /**
+     * Suma al producto las palabras de un campo con el peso del campo.
+     * @return Longitud ponderada del campo.
+     */
+    private static float addField(Map<String, Float> weights, String text, float weight) {
+        List<String> tokens = tokenize(text);
+        for (String token : tokens) {
+            weights.merge(token, weight, Float::sum);
+        }
+        return tokens.size() * weight;
+    }
+
+    /**
+     * Separa un texto en palabras sin tildes, en minusculas y sin palabras vacias.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+                .replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        for (String token : SEPARATORS.split(folded)) {
+            if (!token.isEmpty() && !STOPWORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Productos que contienen un termino, con el peso del termino en cada uno y la longitud del
+     * producto, para puntuar sin buscar cada producto en docs.
+     */
+    private static final class Postings {
+        private int[] ids = new int[2];
+        private float[] weights = new float[2];
+        private float[] lengths = new float[2];
+        private int size = 0;
+
+        void add(int productId, float weight, float length) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            ids[size] = productId;
+            weights[size] = weight;
+            lengths[size] = length;
+            size++;
+        }
+
+        void remove(int productId) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == productId) {
+                    size--;
+                    ids[i] = ids[size];
+                    weights[i] = weights[size];
+                    lengths[i] = lengths[size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Puntaje de cada producto durante una busqueda, en arreglos primitivos con direccionamiento
+     * abierto: un termino comun coincide con decenas de miles de productos y un HashMap crearia
+     * un Integer y un Double por cada uno.
+     */
+    private static final class ScoreMap {
+        private int[] keys;
+        private double[] values;
+        private boolean[] used;
+        private int size = 0;
+
+        ScoreMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) * 2;
+            keys = new int[capacity];
+            values = new double[capacity];
+            used = new boolean[capacity];
+        }
+
+        /**
+         * @return Puntaje del producto, o NaN si no tiene.
+         */
+        double get(int productId) {
+            int mask = keys.length - 1;
+            for (int slot = slot(productId, mask); used[slot]; slot = (slot + 1) & mask) {
+                if (keys[slot] == productId) return values[slot];
+            }
+            return Double.NaN;
+        }
+
+        /**
+         * Guarda el puntaje si el producto no tenia uno o si es mayor al que tenia.
+         */
+        void putMax(int productId, double score) {
+            int mask = keys.length - 1;
+            int slot = slot(productId, mask);
+            while (used[slot]) {
+                if (keys[slot] == productId) {
+                    if (score > values[slot]) values[slot] = score;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = productId;
+            values[slot] = score;
+            // Se mantiene a lo sumo a la mitad de su capacidad
+            if (++size * 2 > keys.length) grow();
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            double[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new int[oldKeys.length * 2];
+            values = new double[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (!oldUsed[i]) continue;
+                int slot = slot(oldKeys[i], mask);
+                while (used[slot]) slot = (slot + 1) & mask;
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int slot(int productId, int mask) {
+            int h = productId * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    /**
+     * Datos de un producto indexado: lo necesario para responder sin consultar la base de datos.
+     */
+    private static final class Doc {
+        private final String name;
+        private final String brand;
+        private final BigDecimal price;
+        private final String imageUrl;
+        private final String category;
+        private final String[] terms;
+        private final float length;
+
+        Doc(Product product, String category, String[] terms, float length) {
+            this.name = product.getName();
+            this.brand = product.getBrand();
+            this.price = product.getPrice();
+            this.imageUrl = product.getImage_url();
+            this.category = category;
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package com.tiendapesca.APItiendapesca.Service;
 
+import com.tiendapesca.APItiendapesca.Dtos.ProductSearchResultDTO;
 import com.tiendapesca.APItiendapesca.Entities.Product;
 import com.tiendapesca.APItiendapesca.Repository.Product_Repository;
 import com.tiendapesca.APItiendapesca.Events.ProductCreatedEvent;
+import com.tiendapesca.APItiendapesca.Events.ProductDeletedEvent;
+import com.tiendapesca.APItiendapesca.Events.ProductUpdatedEvent;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
@@ -26,6 +33,18 @@ public class Product_Service {
     
     @Autowired
     private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ProductSearchIndex searchIndex;
+
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    @Autowired
+    private CatalogSnapshotHolder snapshotHolder;
+
+    @Value("${product.search.max-results:50}")
+    private int maxSearchResults;
     
     /**
      * Obtiene todos los productos de forma paginada
@@ -33,7 +52,29 @@ public class Product_Service {
      * @return Página de productos
      */
     public Page<Product> AllProducts(Pageable pageable) {
-        return productRepository.findAll(pageable);
+        CatalogSnapshot snapshot = snapshotHolder.current();
+        if (snapshot != null) {
+            return snapshot.page(pageable);
+        }
+        return catalogCache.getPage(pageable.getPageNumber(), pageable.getPageSize(),
+                () -> productRepository.findAll(pageable));
+    }
+
+    /**
+     * Obtiene un producto por su ID
+     * @param id ID del producto
+     * @return Producto encontrado
+     * @throws RuntimeException Si el producto no existe
+     */
+    public Product getProduct(int id) {
+        CatalogSnapshot snapshot = snapshotHolder.current();
+        Product product = snapshot != null
+                ? snapshot.get(id)
+                : catalogCache.getProduct(id, () -> productRepository.findById(id).orElse(null));
+        if (product == null) {
+            throw new RuntimeException("Producto no encontrado con ID: " + id);
+        }
+        return product;
     }
     
     /**
@@ -59,6 +100,7 @@ public class Product_Service {
     public Product updateProduct(int id, Product updatedProduct) {
         Product existingProduct = productRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Producto no encontrado con ID: " + id));
+        BigDecimal previousPrice = existingProduct.getPrice();
 
         // Actualizar solo los campos no nulos
         Optional.ofNullable(updatedProduct.getBrand()).ifPresent(existingProduct::setBrand);
@@ -71,7 +113,12 @@ public class Product_Service {
         
         existingProduct.setDate(LocalDateTime.now());
         
-        return productRepository.save(existingProduct);
+        Product savedProduct = productRepository.save(existingProduct);
+
+        // PUBLICAR EVENTO para refrescar datos derivados del producto (totales de carritos)
+        eventPublisher.publishEvent(new ProductUpdatedEvent(savedProduct, previousPrice));
+
+        return savedProduct;
     }
     
     /**
@@ -84,11 +131,57 @@ public class Product_Service {
             throw new RuntimeException("Producto con ID " + id + " no existe.");
         }
         productRepository.deleteById(id);
+
+        // PUBLICAR EVENTO para quitar el producto del indice de busqueda
+        eventPublisher.publishEvent(new ProductDeletedEvent(id));
+    }
+
+    /**
+     * Filtra productos por categoría, marca, rango de precio y disponibilidad, ordenados por ID
+     * @param categoryId ID de la categoría (opcional)
+     * @param brand Marca (opcional, sin distinguir mayúsculas)
+     * @param minPrice Precio mínimo (opcional)
+     * @param maxPrice Precio máximo (opcional)
+     * @param inStock Solo productos con stock
+     * @param pageable Configuración de paginación
+     * @return Página de productos
+     */
+    public Page<Product> filterProducts(Integer categoryId, String brand, BigDecimal minPrice,
+                                        BigDecimal maxPrice, boolean inStock, Pageable pageable) {
+        String brandFilter = brand != null && !brand.isBlank() ? brand.trim() : null;
+        CatalogSnapshot snapshot = snapshotHolder.current();
+        if (snapshot != null) {
+            return snapshot.filter(categoryId, brandFilter, minPrice, maxPrice, inStock, pageable);
+        }
+        return productRepository.filter(categoryId, brandFilter, minPrice, maxPrice, inStock, pageable);
+    }
+
+    /**
+     * Busca productos por nombre, marca, categoría y descripción, ordenados por relevancia
+     * @param query Texto a buscar
+     * @param size Cantidad máxima de resultados
+     * @return Productos encontrados
+     */
+    public List<ProductSearchResultDTO> searchProducts(String query, int size) {
+        int limit = Math.min(Math.max(size, 1), maxSearchResults);
+        if (searchIndex.isReady()) {
+            return searchIndex.search(query, limit);
+        }
+        // El indice aun se esta construyendo: se busca solo por nombre en la base de datos
+        return productRepository.searchByName(query, PageRequest.of(0, limit)).stream()
+                .map(product -> new ProductSearchResultDTO(product.getId(), product.getName(), product.getBrand(),
+                        product.getPrice(), product.getImage_url(),
+                        product.getCategorie() != null ? product.getCategorie().getName() : null, 0))
+                .collect(Collectors.toList());
     }
 
 
 
     public List<Product> listarPorCategoria(Integer idCategoria) {
-        return productRepository.findByCategorie_Id(idCategoria);
+        CatalogSnapshot snapshot = snapshotHolder.current();
+        if (snapshot != null) {
+            return snapshot.byCategory(idCategoria);
+        }
+        return catalogCache.getCategory(idCategoria, () -> productRepository.findByCategorie_Id(idCategoria));
     }
 }
\ No newline at end of file
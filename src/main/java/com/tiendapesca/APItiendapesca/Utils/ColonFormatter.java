@@ -0,0 +1,132 @@
+package com.tiendapesca.APItiendapesca.Utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+
+/**
+ * Formateo de montos en colones con separador de miles y dos decimales (1,234,567.89),
+ * equivalente a String.format("%,.2f") pero sin Formatter ni expresiones regulares:
+ * los digitos se escriben en un buffer de caracteres reutilizado por hilo, y la unica
+ * asignacion es el String resultante. Seguro para uso concurrente.
+ *
+ * Como %,.2f, un monto negativo que redondea a cero conserva el signo (-0.001 da -0.00).
+ */
+public final class ColonFormatter {
+
+    public static final String SYMBOL = "₡";
+
+    // Suficiente para un long de centimos con separadores, signo y simbolo
+    private static final int BUFFER_SIZE = 32;
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[BUFFER_SIZE]);
+    private static final int MAX_LONG_PRECISION = 18;
+
+    private ColonFormatter() {
+    }
+
+    /**
+     * Formatea un monto redondeando a dos decimales (HALF_UP, como %.2f).
+     * @param amount Monto en colones.
+     * @return Texto como 1,234.50; "null" si el monto es null.
+     */
+    public static String format(BigDecimal amount) {
+        return format(amount, false);
+    }
+
+    /**
+     * Formatea un monto expresado en centimos.
+     * @param centimos Monto en centimos (123450 = 1,234.50).
+     */
+    public static String format(long centimos) {
+        char[] buffer = BUFFER.get();
+        int start = write(centimos, buffer, buffer.length);
+        return new String(buffer, start, buffer.length - start);
+    }
+
+    /**
+     * Formatea un monto con el simbolo de colon: ₡ 1,234.50.
+     * @param amount Monto en colones.
+     */
+    public static String formatWithSymbol(BigDecimal amount) {
+        return format(amount, true);
+    }
+
+    /**
+     * Agrega el monto formateado a un StringBuilder (correos, reportes), sin String intermedio.
+     * @param builder Destino.
+     * @param amount Monto en colones.
+     * @return El mismo builder.
+     */
+    public static StringBuilder append(StringBuilder builder, BigDecimal amount) {
+        if (amount == null) return builder.append("null");
+        BigDecimal scaled = amount.setScale(2, RoundingMode.HALF_UP);
+        if (scaled.precision() > MAX_LONG_PRECISION) {
+            return builder.append(formatLarge(scaled));
+        }
+        char[] buffer = BUFFER.get();
+        int start = write(scaled.unscaledValue().longValue(), buffer, buffer.length);
+        if (isNegativeZero(amount, scaled)) buffer[--start] = '-';
+        return builder.append(buffer, start, buffer.length - start);
+    }
+
+    private static String format(BigDecimal amount, boolean withSymbol) {
+        if (amount == null) return withSymbol ? SYMBOL + " null" : "null";
+
+        BigDecimal scaled = amount.setScale(2, RoundingMode.HALF_UP);
+        if (scaled.precision() > MAX_LONG_PRECISION) {
+            String formatted = formatLarge(scaled);
+            return withSymbol ? SYMBOL + " " + formatted : formatted;
+        }
+
+        char[] buffer = BUFFER.get();
+        int start = write(scaled.unscaledValue().longValue(), buffer, buffer.length);
+        if (isNegativeZero(amount, scaled)) buffer[--start] = '-';
+        if (withSymbol) {
+            buffer[--start] = ' ';
+            buffer[--start] = SYMBOL.charAt(0);
+        }
+        return new String(buffer, start, buffer.length - start);
+    }
+
+    /**
+     * Escribe los centimos de derecha a izquierda terminando en end.
+     * @return Posicion del primer caracter escrito.
+     */
+    private static int write(long centimos, char[] buffer, int end) {
+        int pos = end;
+        boolean negative = centimos < 0;
+        // Se trabaja con el valor negativo para cubrir tambien Long.MIN_VALUE
+        long value = negative ? centimos : -centimos;
+
+        int cents = (int) -(value % 100);
+        value /= 100;
+        buffer[--pos] = (char) ('0' + cents % 10);
+        buffer[--pos] = (char) ('0' + cents / 10);
+        buffer[--pos] = '.';
+
+        int digits = 0;
+        do {
+            if (digits > 0 && digits % 3 == 0) buffer[--pos] = ',';
+            buffer[--pos] = (char) ('0' - value % 10);
+            value /= 10;
+            digits++;
+        } while (value != 0);
+
+        if (negative) buffer[--pos] = '-';
+        return pos;
+    }
+
+    /**
+     * Negativo que redondea a cero: String.format toma el signo del monto original.
+     */
+    private static boolean isNegativeZero(BigDecimal amount, BigDecimal scaled) {
+        return scaled.signum() == 0 && amount.signum() < 0;
+    }
+
+    /**
+     * Montos que no caben en un long de centimos: fuera de la ruta rapida.
+     */
+    private static String formatLarge(BigDecimal scaled) {
+        return String.format(Locale.US, "%,.2f", scaled);
+    }
+}
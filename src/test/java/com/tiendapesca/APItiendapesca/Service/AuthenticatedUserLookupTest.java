@@ -0,0 +1,110 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.AddToCartRequestDTO;
+import com.tiendapesca.APItiendapesca.Entities.Product;
+import com.tiendapesca.APItiendapesca.Entities.Users;
+import com.tiendapesca.APItiendapesca.Repository.Cart_Repository;
+import com.tiendapesca.APItiendapesca.Repository.OrderDetail_Repository;
+import com.tiendapesca.APItiendapesca.Repository.Orders_Repository;
+import com.tiendapesca.APItiendapesca.Repository.Product_Repository;
+import com.tiendapesca.APItiendapesca.Repository.Users_Repository;
+import com.tiendapesca.APItiendapesca.Security.AuthenticatedUserContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Verifica que Cart_Service y Orders_Service confian en el usuario que JWT_Filter dejo en el
+ * SecurityContext y no vuelven a consultarlo (existsById/findById) cuando la solicitud es
+ * sobre el propio usuario autenticado.
+ */
+class AuthenticatedUserLookupTest {
+
+    private static final int USER_ID = 7;
+    private static final int OTHER_USER_ID = 8;
+
+    private final Users_Repository userRepository = mock(Users_Repository.class);
+    private final Cart_Repository cartRepository = mock(Cart_Repository.class);
+    private final Product_Repository productRepository = mock(Product_Repository.class);
+    private final Orders_Repository orderRepository = mock(Orders_Repository.class);
+
+    private Cart_Service cartService;
+    private Orders_Service ordersService;
+    private Users user;
+
+    @BeforeEach
+    void setUp() {
+        user = new Users("Cliente", "cliente@tiendapesca.com", "secreta");
+        user.setId(USER_ID);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, List.of()));
+
+        AuthenticatedUserContext userContext = new AuthenticatedUserContext();
+        cartService = new Cart_Service(cartRepository, productRepository, userRepository,
+                mock(CartWriteBehindStore.class), mock(CartSummaryCache.class), userContext,
+                mock(ApplicationEventPublisher.class), null, mock(CartValidator.class), 100, 10);
+        ordersService = new Orders_Service(orderRepository, mock(OrderDetail_Repository.class), cartService,
+                productRepository, userRepository, mock(Invoice_Service.class), userContext,
+                mock(CartValidator.class), mock(ApplicationEventPublisher.class));
+    }
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void cartItemsOfTheAuthenticatedUserDoNotReloadTheUser() {
+        cartService.getCartItems(USER_ID);
+
+        verify(cartRepository).findCartItemsByUserId(USER_ID);
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void addToCartDoesNotReloadTheUser() {
+        Product product = new Product();
+        product.setId(3);
+        product.setPrice(new BigDecimal("25.00"));
+        product.setStock(10);
+        when(productRepository.findById(3)).thenReturn(Optional.of(product));
+        when(cartRepository.addQuantity(anyInt(), anyInt(), anyInt())).thenReturn(1);
+
+        cartService.addProductToCart(user, new AddToCartRequestDTO(3, 2));
+
+        verify(cartRepository).addQuantity(USER_ID, 3, 2);
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void ordersOfTheAuthenticatedUserDoNotReloadTheUser() {
+        ordersService.getUserOrders(USER_ID);
+
+        verify(orderRepository).findByUserIdWithDetails(USER_ID);
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void anotherUserIsStillCheckedAgainstTheDatabase() {
+        when(userRepository.existsById(OTHER_USER_ID)).thenReturn(true);
+
+        cartService.getCartItems(OTHER_USER_ID);
+        ordersService.getUserOrders(OTHER_USER_ID);
+
+        verify(userRepository, times(2)).existsById(OTHER_USER_ID);
+    }
+}
@@ -0,0 +1,95 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.CartSummaryDTO;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Version por usuario de la cache de resumenes: una carga desde la base de datos solo se
+ * descarta si cambio el carrito de ese mismo usuario o si se invalido todo.
+ */
+class CartSummaryCacheTest {
+
+    private static final CartSummaryDTO LOADED = new CartSummaryDTO(new BigDecimal("50.00"), 2);
+
+    private final CartSummaryCache cache = new CartSummaryCache(100);
+
+    @Test
+    void loadIsKeptWhenAnotherUserChangesTheirCart() {
+        cache.put(2, new CartSummaryDTO(BigDecimal.TEN, 1), cache.beginLoad(2));
+
+        long version = cache.beginLoad(1);
+        cache.applyAfterCommit(2, 1, BigDecimal.ONE);
+        cache.invalidateAfterCommit(3);
+        cache.clearAfterCommit(4);
+        cache.put(1, LOADED, version);
+
+        assertEquals(LOADED, cache.get(1));
+        assertEquals(2, cache.get(2).getItemCount());
+    }
+
+    @Test
+    void loadIsDiscardedWhenTheSameUserChangesTheirCart() {
+        long version = cache.beginLoad(1);
+        cache.applyAfterCommit(1, 1, BigDecimal.ONE);
+        cache.put(1, LOADED, version);
+        assertNull(cache.get(1));
+
+        version = cache.beginLoad(1);
+        cache.invalidateAfterCommit(1);
+        cache.put(1, LOADED, version);
+        assertNull(cache.get(1));
+
+        version = cache.beginLoad(1);
+        cache.clearAfterCommit(1);
+        cache.put(1, LOADED, version);
+        assertEquals(0, cache.get(1).getItemCount());
+    }
+
+    @Test
+    void invalidateAllDiscardsLoadsInProgress() {
+        long version = cache.beginLoad(1);
+        cache.invalidateAll();
+        // Una carga nueva del mismo usuario no revive la anterior
+        long newVersion = cache.beginLoad(1);
+        cache.put(1, LOADED, version);
+        assertNull(cache.get(1));
+
+        cache.put(1, LOADED, newVersion);
+        assertEquals(LOADED, cache.get(1));
+    }
+
+    @Test
+    void changesUpdateCachedSummaries() {
+        cache.put(1, LOADED, cache.beginLoad(1));
+        cache.applyAfterCommit(1, 3, new BigDecimal("2.50"));
+
+        CartSummaryDTO summary = cache.get(1);
+        assertNotNull(summary);
+        assertEquals(5, summary.getItemCount());
+        assertEquals(0, new BigDecimal("57.50").compareTo(summary.getTotal()));
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() throws InterruptedException {
+        CartSummaryCache small = new CartSummaryCache(10);
+        for (int userId = 1; userId <= 10; userId++) {
+            small.put(userId, LOADED, small.beginLoad(userId));
+            Thread.sleep(1);
+        }
+        small.get(1);
+        small.put(11, LOADED, small.beginLoad(11));
+
+        assertNotNull(small.get(1));
+        assertNotNull(small.get(11));
+        // Se libera un 10% extra: los dos usados hace mas tiempo
+        assertNull(small.get(2));
+        assertNull(small.get(3));
+        assertEquals(2L, small.getStats().get("evictions"));
+    }
+}
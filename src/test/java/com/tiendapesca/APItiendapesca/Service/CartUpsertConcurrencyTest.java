@@ -0,0 +1,208 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.AddToCartRequestDTO;
+import com.tiendapesca.APItiendapesca.Entities.Product;
+import com.tiendapesca.APItiendapesca.Entities.Users;
+import com.tiendapesca.APItiendapesca.Repository.Cart_Repository;
+import com.tiendapesca.APItiendapesca.Repository.Product_Repository;
+import com.tiendapesca.APItiendapesca.Repository.Users_Repository;
+import com.tiendapesca.APItiendapesca.Security.AuthenticatedUserContext;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Prueba de concurrencia de Cart_Repository.addQuantity contra MySQL real. Es opcional porque
+ * necesita Docker:
+ *   mvn test -Dtest=CartUpsertConcurrencyTest -Dcart.it.mysql=true
+ *
+ * Varios hilos agregan a la vez la misma linea nueva a traves de Cart_Service, que reintenta
+ * ante deadlocks. La sentencia es la declarada en @Query de addQuantity, ejecutada en su propia
+ * transaccion como en el repositorio. Al final de cada ronda debe haber una sola linea con la
+ * suma de todas las cantidades, y ninguna solicitud debe haber agotado los intentos. Tambien
+ * verifica que los cambios renuevan date_added, la ultima actividad que usa la depuracion.
+ */
+@EnabledIfSystemProperty(named = "cart.it.mysql", matches = "true")
+@Testcontainers(disabledWithoutDocker = true)
+class CartUpsertConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 50;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final int USER_ID = 1;
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    private static HikariDataSource dataSource;
+    private static NamedParameterJdbcTemplate jdbc;
+    private static TransactionTemplate transaction;
+    private static String addQuantitySql;
+
+    private final AtomicInteger deadlocks = new AtomicInteger();
+    private final AtomicInteger maxAttempts = new AtomicInteger();
+    private final ThreadLocal<int[]> attempts = ThreadLocal.withInitial(() -> new int[1]);
+    private Cart_Service cartService;
+    private Users user;
+
+    @BeforeAll
+    static void createSchema() throws Exception {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(MYSQL.getJdbcUrl());
+        dataSource.setUsername(MYSQL.getUsername());
+        dataSource.setPassword(MYSQL.getPassword());
+        dataSource.setMaximumPoolSize(THREADS + 2);
+        jdbc = new NamedParameterJdbcTemplate(dataSource);
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        // Solo las columnas que usa la sentencia, con la clave unica y la FK del esquema real
+        jdbc.getJdbcTemplate().execute("CREATE TABLE product (" +
+                "id INT PRIMARY KEY, price DECIMAL(10,2) NOT NULL, stock INT NOT NULL)");
+        jdbc.getJdbcTemplate().execute("CREATE TABLE cart (" +
+                "id INT AUTO_INCREMENT PRIMARY KEY, user_id INT NOT NULL, product_id INT NOT NULL, " +
+                "quantity INT NOT NULL, date_added DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "unit_price DECIMAL(10,2), price_changed BIT(1) NOT NULL DEFAULT 0, " +
+                "UNIQUE KEY uk_cart_user_product (user_id, product_id), " +
+                "CONSTRAINT fk_cart_product FOREIGN KEY (product_id) REFERENCES product (id))");
+
+        addQuantitySql = Cart_Repository.class
+                .getMethod("addQuantity", Integer.class, Integer.class, Integer.class)
+                .getAnnotation(Query.class).value();
+    }
+
+    @AfterAll
+    static void closeDataSource() {
+        if (dataSource != null) dataSource.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        Cart_Repository cartRepository = mock(Cart_Repository.class);
+        when(cartRepository.addQuantity(anyInt(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            attempts.get()[0]++;
+            Map<String, Object> params = Map.of(
+                    "userId", invocation.getArgument(0),
+                    "productId", invocation.getArgument(1),
+                    "quantity", invocation.getArgument(2));
+            try {
+                return transaction.execute(status -> jdbc.update(addQuantitySql, params));
+            } catch (PessimisticLockingFailureException e) {
+                deadlocks.incrementAndGet();
+                throw e;
+            }
+        });
+
+        Product_Repository productRepository = mock(Product_Repository.class);
+        when(productRepository.findById(anyInt())).thenAnswer(invocation -> {
+            Product product = new Product();
+            product.setId(invocation.getArgument(0));
+            product.setPrice(new BigDecimal("10.00"));
+            product.setStock(1_000_000);
+            return Optional.of(product);
+        });
+
+        cartService = new Cart_Service(cartRepository, productRepository, mock(Users_Repository.class),
+                mock(CartWriteBehindStore.class), mock(CartSummaryCache.class), mock(AuthenticatedUserContext.class),
+                mock(ApplicationEventPublisher.class), null, mock(CartValidator.class), 100, MAX_ATTEMPTS);
+        user = new Users();
+        user.setId(USER_ID);
+    }
+
+    @Test
+    void concurrentFirstAddsOfTheSameLineStayWithinTheRetryBudget() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int productId = 1; productId <= ROUNDS; productId++) {
+                jdbc.update("INSERT INTO product (id, price, stock) VALUES (:id, 10.00, 1000000)",
+                        Map.of("id", productId));
+
+                CyclicBarrier start = new CyclicBarrier(THREADS);
+                List<Future<?>> adds = new ArrayList<>(THREADS);
+                int round = productId;
+                for (int i = 0; i < THREADS; i++) {
+                    adds.add(pool.submit(() -> {
+                        start.await();
+                        add(round);
+                        return null;
+                    }));
+                }
+                // Una solicitud que agota los intentos propaga el deadlock aqui
+                for (Future<?> add : adds) {
+                    add.get(60, TimeUnit.SECONDS);
+                }
+
+                Map<String, Object> line = jdbc.queryForMap(
+                        "SELECT COUNT(*) AS lines_count, SUM(quantity) AS total FROM cart " +
+                                "WHERE user_id = :userId AND product_id = :productId",
+                        Map.of("userId", USER_ID, "productId", productId));
+                assertEquals(1L, ((Number) line.get("lines_count")).longValue(), "Linea duplicada");
+                assertEquals(THREADS, ((Number) line.get("total")).intValue(), "Incremento perdido");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(maxAttempts.get() < MAX_ATTEMPTS, String.format(
+                "Se usaron %d de %d intentos (%d deadlocks en %d solicitudes)",
+                maxAttempts.get(), MAX_ATTEMPTS, deadlocks.get(), THREADS * ROUNDS));
+    }
+
+    @Test
+    void changesRenewTheLastActivityUsedByCompaction() throws Exception {
+        int productId = 10_000;
+        jdbc.update("INSERT INTO product (id, price, stock) VALUES (:id, 10.00, 1000000)", Map.of("id", productId));
+        add(productId);
+        // La linea se agrego hace 40 dias: la depuracion la consideraria abandonada
+        String backdate = "UPDATE cart SET date_added = NOW() - INTERVAL 40 DAY WHERE user_id = :userId";
+        String idleDays = "SELECT DATEDIFF(NOW(), MAX(date_added)) FROM cart WHERE user_id = :userId";
+        Map<String, Object> userParams = Map.of("userId", USER_ID);
+
+        jdbc.update(backdate, userParams);
+        add(productId);
+        assertEquals(0, jdbc.queryForObject(idleDays, userParams, Integer.class),
+                "Agregar no renueva la actividad");
+
+        jdbc.update(backdate, userParams);
+        String touchSql = Cart_Repository.class.getMethod("touchByUserId", Integer.class)
+                .getAnnotation(Query.class).value();
+        jdbc.update(touchSql, userParams);
+        assertEquals(0, jdbc.queryForObject(idleDays, userParams, Integer.class),
+                "touchByUserId no renueva la actividad");
+    }
+
+    private void add(int productId) {
+        attempts.get()[0] = 0;
+        cartService.addProductToCart(user, new AddToCartRequestDTO(productId, 1));
+        maxAttempts.accumulateAndGet(attempts.get()[0], Math::max);
+    }
+}
@@ -0,0 +1,129 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
+import com.tiendapesca.APItiendapesca.Entities.Invoice;
+import com.tiendapesca.APItiendapesca.Entities.Orders;
+import com.tiendapesca.APItiendapesca.Repository.Invoice_Repository;
+import com.tiendapesca.APItiendapesca.Repository.Orders_Repository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Una factura cancelada mientras su PDF esta en la cola de renderizado (o renderizandose) debe
+ * terminar con la marca de agua ANULADA, sin importar quien llegue primero: la cancelacion o
+ * el guardado de la ruta del PDF.
+ */
+class InvoiceCancelRenderRaceTest {
+
+    private static final int ORDER_ID = 15;
+    private static final int INVOICE_ID = 40;
+    private static final String INVOICE_NUMBER = "INV-2025-TEST0035";
+
+    private final Invoice_Repository invoiceRepository = mock(Invoice_Repository.class);
+    private final Orders_Repository orderRepository = mock(Orders_Repository.class);
+    private final InvoiceRenderExecutor renderExecutor = mock(InvoiceRenderExecutor.class);
+    private final InvoiceNumberGenerator numberGenerator = mock(InvoiceNumberGenerator.class);
+    private final InvoiceWatermarker watermarker = mock(InvoiceWatermarker.class);
+
+    private Invoice_Service invoiceService;
+    private Invoice invoice;
+
+    @BeforeEach
+    void setUp() {
+        invoiceService = new Invoice_Service(invoiceRepository, orderRepository, mock(PdfGeneratorService.class),
+                mock(Email_Service.class), mock(InvoicePdfCache.class), renderExecutor, numberGenerator,
+                mock(InvoiceXmlWriter.class), watermarker, false);
+
+        Orders order = new Orders();
+        order.setId(ORDER_ID);
+        when(orderRepository.findById(ORDER_ID)).thenReturn(Optional.of(order));
+        when(numberGenerator.nextInvoiceNumber()).thenReturn(INVOICE_NUMBER);
+        when(invoiceRepository.save(any(Invoice.class))).thenAnswer(call -> {
+            Invoice saved = call.getArgument(0);
+            saved.setId(INVOICE_ID);
+            invoice = saved;
+            return saved;
+        });
+        when(invoiceRepository.findByOrderId(ORDER_ID)).thenAnswer(call -> Optional.ofNullable(invoice));
+    }
+
+    @AfterEach
+    void deleteStoredPdf() throws Exception {
+        Files.deleteIfExists(Paths.get(PdfGeneratorService.storagePath(INVOICE_NUMBER, ".pdf")));
+    }
+
+    @Test
+    void cancelWhileRenderIsQueuedStampsWhenThePathIsSaved() throws Exception {
+        Consumer<String> onRendered = generateInvoiceAndCaptureRender();
+
+        // La cancelacion confirma antes de que el PDF exista: todavia no hay ruta
+        invoiceService.cancelInvoice(ORDER_ID);
+        verify(watermarker).stampAfterCommit(INVOICE_NUMBER, null);
+
+        when(invoiceRepository.findIsCanceledById(INVOICE_ID)).thenReturn(true);
+        onRendered.accept("invoices/factura_render.pdf");
+
+        verify(invoiceRepository).updatePdfUrl(INVOICE_ID, "invoices/factura_render.pdf");
+        verify(watermarker).stampAfterCommit(INVOICE_NUMBER, "invoices/factura_render.pdf");
+    }
+
+    @Test
+    void renderOfAnInvoiceThatIsStillValidIsNotStamped() throws Exception {
+        Consumer<String> onRendered = generateInvoiceAndCaptureRender();
+
+        when(invoiceRepository.findIsCanceledById(INVOICE_ID)).thenReturn(false);
+        onRendered.accept("invoices/factura_render.pdf");
+
+        verify(watermarker, never()).stampAfterCommit(anyString(), anyString());
+    }
+
+    @Test
+    void cancelWithoutPathStampsTheFileTheRenderAlreadyWrote() throws Exception {
+        // El render ya escribio el archivo pero aun no guardo la ruta cuando la cancelacion confirma
+        PdfGeneratorService pdfGeneratorService = mock(PdfGeneratorService.class);
+        InvoiceWatermarker realWatermarker = new InvoiceWatermarker(pdfGeneratorService, mock(InvoicePdfCache.class));
+        String storedPath = PdfGeneratorService.storagePath(INVOICE_NUMBER, ".pdf");
+        Path file = Paths.get(storedPath);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[]{'%', 'P', 'D', 'F'});
+        when(pdfGeneratorService.stampCanceledWatermark(storedPath)).thenReturn(true);
+
+        try {
+            realWatermarker.stampAfterCommit(INVOICE_NUMBER, null);
+            verify(pdfGeneratorService, timeout(5000)).stampCanceledWatermark(storedPath);
+        } finally {
+            realWatermarker.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Consumer<String> generateInvoiceAndCaptureRender() throws Exception {
+        when(renderExecutor.submit(any(InvoicePdfDTO.class), eq(INVOICE_NUMBER), any())).thenReturn(true);
+        invoiceService.generateAndSaveInvoice(ORDER_ID);
+
+        ArgumentCaptor<InvoicePdfDTO> dto = ArgumentCaptor.forClass(InvoicePdfDTO.class);
+        ArgumentCaptor<Consumer<String>> callback = ArgumentCaptor.forClass(Consumer.class);
+        verify(renderExecutor).submit(dto.capture(), eq(INVOICE_NUMBER), callback.capture());
+        // Los datos del PDF se tomaron con la factura vigente
+        assertFalse(dto.getValue().isCanceled());
+        return callback.getValue();
+    }
+}
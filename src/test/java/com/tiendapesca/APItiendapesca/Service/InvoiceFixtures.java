@@ -0,0 +1,63 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
+import com.tiendapesca.APItiendapesca.Dtos.ProductItemDTO;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Facturas sinteticas para los benchmarks, sin base de datos.
+ */
+final class InvoiceFixtures {
+
+    private static final BigDecimal TAX_RATE = new BigDecimal("0.13");
+
+    private InvoiceFixtures() {
+    }
+
+    /**
+     * Crea una factura con la cantidad de lineas indicada y montos deterministas.
+     */
+    static InvoicePdfDTO invoice(int items) {
+        List<ProductItemDTO> products = new ArrayList<>(items);
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal tax = BigDecimal.ZERO;
+        for (int i = 0; i < items; i++) {
+            BigDecimal unitPrice = BigDecimal.valueOf(1_500 + (i * 7_919L) % 250_000, 2).multiply(BigDecimal.TEN);
+            int quantity = 1 + i % 5;
+            BigDecimal lineSubtotal = unitPrice.multiply(BigDecimal.valueOf(quantity));
+            BigDecimal lineTax = lineSubtotal.multiply(TAX_RATE).setScale(2, RoundingMode.HALF_UP);
+            products.add(new ProductItemDTO("Señuelo Kraken modelo " + i, unitPrice, quantity, lineSubtotal, lineTax));
+            subtotal = subtotal.add(lineSubtotal);
+            tax = tax.add(lineTax);
+        }
+
+        return new InvoicePdfDTO(
+                "INV-2025-" + String.format("%08d", items),
+                LocalDateTime.of(2025, 1, 15, 10, 30),
+                "TARJETA",
+                "Cliente de Prueba",
+                "cliente@ejemplo.com",
+                "Limón, Costa Rica, 200 m norte del muelle",
+                "+506 8888-0000",
+                products,
+                subtotal,
+                tax,
+                subtotal.add(tax));
+    }
+
+    /**
+     * Montos variados (de centimos a millones) para medir el formateo de moneda.
+     */
+    static BigDecimal[] amounts(int count) {
+        BigDecimal[] amounts = new BigDecimal[count];
+        for (int i = 0; i < count; i++) {
+            amounts[i] = BigDecimal.valueOf((i * 104_729L) % 900_000_000L, 2);
+        }
+        return amounts;
+    }
+}
@@ -0,0 +1,116 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Entities.Invoice;
+import com.tiendapesca.APItiendapesca.Repository.Invoice_Repository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara las tres formas de saber si una orden tiene factura, sobre un listado de 1024 ordenes
+ * con un porcentaje facturado variable:
+ *   - getInvoiceForOrder dentro de try/catch (la forma anterior, una excepcion por orden sin factura)
+ *   - findInvoiceForOrder().isPresent()
+ *   - hasInvoice, que responde los positivos desde el BitSet sin consultar el repositorio
+ * El repositorio es un stub en memoria, por lo que se mide solo el costo en la JVM; en produccion
+ * cada consulta evitada ahorra ademas un viaje a la base de datos. Ejecutar con:
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=InvoiceLookupBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class InvoiceLookupBenchmark {
+
+    private static final int ORDERS = 1024;
+
+    // Porcentaje de ordenes con factura
+    @Param({"10", "50", "90"})
+    public int invoicedPercent;
+
+    private Invoice_Service invoiceService;
+    private Integer[] orderIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        orderIds = new Integer[ORDERS];
+        boolean[] invoiced = new boolean[ORDERS + 1];
+        for (int i = 0; i < ORDERS; i++) {
+            orderIds[i] = i + 1;
+            invoiced[i + 1] = (i * 37) % 100 < invoicedPercent;
+        }
+
+        Invoice invoice = new Invoice();
+        invoice.setId(1);
+        // Solo se implementan las dos consultas que usan las variantes medidas
+        Invoice_Repository repository = (Invoice_Repository) Proxy.newProxyInstance(
+                Invoice_Repository.class.getClassLoader(), new Class<?>[]{Invoice_Repository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findByOrderId" -> invoiced[(Integer) args[0]] ? Optional.of(invoice) : Optional.empty();
+                    case "existsByOrderId" -> invoiced[(Integer) args[0]];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        invoiceService = new Invoice_Service(repository, null, null, null, null, null, null, null, null, false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public void exceptionLookup(Blackhole blackhole) {
+        for (Integer orderId : orderIds) {
+            boolean exists;
+            try {
+                invoiceService.getInvoiceForOrder(orderId);
+                exists = true;
+            } catch (RuntimeException e) {
+                exists = false;
+            }
+            blackhole.consume(exists);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public void optionalLookup(Blackhole blackhole) {
+        for (Integer orderId : orderIds) {
+            blackhole.consume(invoiceService.findInvoiceForOrder(orderId).isPresent());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public void bitSetHasInvoice(Blackhole blackhole) {
+        for (Integer orderId : orderIds) {
+            blackhole.consume(invoiceService.hasInvoice(orderId));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(InvoiceLookupBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
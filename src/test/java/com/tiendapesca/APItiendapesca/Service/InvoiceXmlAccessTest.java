@@ -0,0 +1,88 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
+import com.tiendapesca.APItiendapesca.Entities.Invoice;
+import com.tiendapesca.APItiendapesca.Entities.Orders;
+import com.tiendapesca.APItiendapesca.Entities.Users;
+import com.tiendapesca.APItiendapesca.Repository.Invoice_Repository;
+import com.tiendapesca.APItiendapesca.Repository.Orders_Repository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * El XML de la factura contiene nombre, correo, direccion y telefono del cliente: solo lo
+ * obtienen el dueño de la orden y los administradores. Para cualquier otro usuario la factura
+ * no existe, con el mismo mensaje que una orden sin facturar.
+ */
+class InvoiceXmlAccessTest {
+
+    private static final int ORDER_ID = 21;
+    private static final String XML_PATH = "invoices/factura_INV-2025-TEST0032.xml";
+
+    private final Invoice_Repository invoiceRepository = mock(Invoice_Repository.class);
+    private final InvoiceXmlWriter xmlWriter = mock(InvoiceXmlWriter.class);
+
+    private Invoice_Service invoiceService;
+    private Users owner;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        invoiceService = new Invoice_Service(invoiceRepository, mock(Orders_Repository.class),
+                mock(PdfGeneratorService.class), mock(Email_Service.class), mock(InvoicePdfCache.class),
+                mock(InvoiceRenderExecutor.class), mock(InvoiceNumberGenerator.class), xmlWriter,
+                mock(InvoiceWatermarker.class), false);
+
+        owner = user(5, "CLIENTE");
+        Orders order = new Orders();
+        order.setId(ORDER_ID);
+        order.setUser(owner);
+        Invoice invoice = new Invoice();
+        invoice.setId(3);
+        invoice.setOrder(order);
+        invoice.setDate(LocalDateTime.of(2025, 3, 1, 9, 0));
+        invoice.setInvoiceNumber("INV-2025-TEST0032");
+        when(invoiceRepository.findByOrderId(ORDER_ID)).thenReturn(Optional.of(invoice));
+        when(xmlWriter.saveXmlToStorage(any(InvoicePdfDTO.class))).thenReturn(XML_PATH);
+    }
+
+    @Test
+    void ownerGetsTheXml() throws Exception {
+        assertEquals(Paths.get(XML_PATH), invoiceService.getInvoiceXml(ORDER_ID, owner));
+    }
+
+    @Test
+    void adminGetsTheXmlOfAnyOrder() throws Exception {
+        assertEquals(Paths.get(XML_PATH), invoiceService.getInvoiceXml(ORDER_ID, user(1, "ROLE_ADMIN")));
+    }
+
+    @Test
+    void anotherCustomerSeesTheInvoiceAsMissing() {
+        RuntimeException denied = assertThrows(RuntimeException.class,
+                () -> invoiceService.getInvoiceXml(ORDER_ID, user(6, "CLIENTE")));
+        when(invoiceRepository.findByOrderId(99)).thenReturn(Optional.empty());
+        RuntimeException missing = assertThrows(RuntimeException.class,
+                () -> invoiceService.getInvoiceXml(99, user(6, "CLIENTE")));
+
+        assertEquals("Factura no encontrada para orden: " + ORDER_ID, denied.getMessage());
+        assertEquals("Factura no encontrada para orden: 99", missing.getMessage());
+        verifyNoInteractions(xmlWriter);
+    }
+
+    private static Users user(int id, String role) {
+        Users user = new Users("Cliente " + id, "cliente" + id + "@tiendapesca.com", "secreta");
+        user.setId(id);
+        user.setRole(role);
+        return user;
+    }
+}
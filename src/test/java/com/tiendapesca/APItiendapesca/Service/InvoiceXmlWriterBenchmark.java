@@ -0,0 +1,129 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendimiento de la exportacion XML: un lote de 100.000 facturas escrito con writeBatch sobre
+ * un flujo descartado, como GET /invoices/admin/export/xml, y una factura suelta. El resultado
+ * del lote se expresa en facturas por segundo; el perfilador gc muestra que la asignacion por
+ * factura no crece con el tamaño del lote. Ejecutar con:
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=InvoiceXmlWriterBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class InvoiceXmlWriterBenchmark {
+
+    private static final int BATCH_SIZE = 100_000;
+    // Facturas distintas que se repiten a lo largo del lote
+    private static final int DISTINCT_INVOICES = 64;
+
+    @Param({"1", "5", "20"})
+    public int items;
+
+    private InvoiceXmlWriter xmlWriter;
+    private InvoicePdfDTO[] invoices;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        xmlWriter = new InvoiceXmlWriter(null);
+        invoices = new InvoicePdfDTO[DISTINCT_INVOICES];
+        for (int i = 0; i < DISTINCT_INVOICES; i++) {
+            invoices[i] = InvoiceFixtures.invoice(items + i % 3);
+        }
+
+        CountingOutputStream counter = new CountingOutputStream();
+        writeBatch(counter);
+        System.out.println("Tamaño del lote de " + BATCH_SIZE + " facturas con " + items + " lineas: "
+                + counter.bytes / (1024 * 1024) + " MB");
+    }
+
+    /**
+     * Exportacion completa del periodo: 100.000 facturas en un solo documento.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void exportBatch() throws IOException {
+        writeBatch(OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Documento con una sola factura, como el XML guardado junto al PDF.
+     */
+    @Benchmark
+    public void singleInvoice() throws IOException {
+        xmlWriter.writeInvoiceDocument(invoices[0], OutputStream.nullOutputStream());
+    }
+
+    private void writeBatch(OutputStream out) throws IOException {
+        // Las facturas se entregan una a una, como desde la consulta paginada de la exportacion
+        Iterable<InvoicePdfDTO> batch = () -> new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < BATCH_SIZE;
+            }
+
+            @Override
+            public InvoicePdfDTO next() {
+                if (next >= BATCH_SIZE) throw new NoSuchElementException();
+                return invoices[next++ % DISTINCT_INVOICES];
+            }
+        };
+        xmlWriter.writeBatch(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31), batch, out);
+    }
+
+    /**
+     * Flujo que solo cuenta los bytes escritos.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(InvoiceXmlWriterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
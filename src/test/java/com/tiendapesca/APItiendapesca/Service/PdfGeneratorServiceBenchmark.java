@@ -0,0 +1,94 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.itextpdf.text.pdf.PdfPCell;
+import com.tiendapesca.APItiendapesca.Dtos.InvoicePdfDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Linea base de rendimiento del renderizado de facturas: documento completo (a memoria y a
+ * un flujo) y celdas de moneda, de 1 a 500 lineas. Usa facturas sinteticas,
+ * por lo que no necesita base de datos. Ejecutar con:
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=PdfGeneratorServiceBenchmark
+ * El perfilador gc reporta la asignacion por operacion (gc.alloc.rate.norm) y el tamaño
+ * de cada PDF se imprime al preparar cada combinacion de parametros.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PdfGeneratorServiceBenchmark {
+
+    @Param({"1", "10", "50", "100", "500"})
+    public int items;
+
+    private PdfGeneratorService pdfGeneratorService;
+    private InvoicePdfDTO invoice;
+    private BigDecimal[] amounts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pdfGeneratorService = new PdfGeneratorService();
+        invoice = InvoiceFixtures.invoice(items);
+        amounts = InvoiceFixtures.amounts(items);
+        System.out.println("Tamaño del PDF con " + items + " lineas: "
+                + pdfGeneratorService.generateInvoicePdf(invoice).length + " bytes");
+    }
+
+    /**
+     * Ruta actual de correo y cache: el PDF completo en un arreglo de bytes.
+     */
+    @Benchmark
+    public byte[] generateToByteArray() {
+        return pdfGeneratorService.generateInvoicePdf(invoice);
+    }
+
+    /**
+     * Ruta de almacenamiento: el PDF se escribe directo al flujo, sin buffer intermedio.
+     */
+    @Benchmark
+    public void generateToStream() {
+        pdfGeneratorService.generateInvoicePdf(invoice, OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Una celda de moneda por cada linea de la factura.
+     */
+    @Benchmark
+    public void currencyCells(Blackhole blackhole) {
+        for (BigDecimal amount : amounts) {
+            PdfPCell cell = pdfGeneratorService.createCurrencyCell(amount);
+            blackhole.consume(cell);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PdfGeneratorServiceBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
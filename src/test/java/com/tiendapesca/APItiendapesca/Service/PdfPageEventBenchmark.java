@@ -0,0 +1,80 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo por pagina del encabezado de factura (logo, datos de la empresa y linea),
+ * comparado con una pagina sin manejador de eventos. Ejecutar con:
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=PdfPageEventBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PdfPageEventBenchmark {
+
+    @Param({"true", "false"})
+    public boolean withHeader;
+
+    private Document document;
+
+    @Setup(Level.Iteration)
+    public void open() throws DocumentException {
+        PdfGeneratorService service = new PdfGeneratorService();
+        document = new Document(PageSize.A4, 40, 40, 80, 40);
+        PdfWriter writer = PdfWriter.getInstance(document, OutputStream.nullOutputStream());
+        if (withHeader) {
+            writer.setPageEvent(service.new InvoicePageEventHandler(false));
+        }
+        document.open();
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        document.close();
+    }
+
+    /**
+     * Cada operacion cierra una pagina, lo que dispara onEndPage.
+     */
+    @Benchmark
+    public void endPage() throws DocumentException {
+        document.add(new Paragraph("."));
+        document.newPage();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PdfPageEventBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,148 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Entities.Categorie;
+import com.tiendapesca.APItiendapesca.Entities.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia de ProductSearchIndex.search sobre un catalogo sintetico de 100.000 productos, con
+ * el tamaño de pagina por defecto de GET /products/search. El modo SampleTime reporta los
+ * percentiles de cada consulta; el objetivo es p0.99 menor a 5 ms. Las consultas cubren una
+ * palabra comun, dos palabras, una palabra rara y el autocompletado con prefijos de 2 y 3
+ * letras, el caso mas costoso. Ejecutar con:
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ProductSearchIndexBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProductSearchIndexBenchmark {
+
+    private static final int PRODUCTS = 100_000;
+    private static final int PAGE_SIZE = 10;
+    // Palabras inventadas de las descripciones, para un diccionario de tamaño realista
+    private static final int VOCABULARY = 8_000;
+
+    private static final String[] TYPES = {"Caña", "Carrete", "Señuelo", "Anzuelo", "Línea", "Plomada",
+            "Red", "Chaleco", "Hielera", "Cuchara", "Vinilo", "Mosca", "Jig", "Bolso", "Guantes", "Lámpara"};
+    private static final String[] ADJECTIVES = {"telescópica", "ultraligera", "trenzada", "flotante",
+            "hundible", "profesional", "marina", "nocturna", "reforzada", "plegable", "metálica", "inoxidable"};
+    private static final String[] BRANDS = {"Kraken", "Shimano", "Daiwa", "Rapala", "Penn", "Abu Garcia",
+            "Okuma", "Berkley", "Mustad", "Owner", "PowerPro", "Williamson", "Yo-Zuri", "Storm", "Fenwick"};
+    private static final String[] CATEGORIES = {"Cañas", "Carretes", "Señuelos", "Anzuelos", "Líneas",
+            "Accesorios", "Ropa", "Hieleras", "Moscas", "Redes"};
+    private static final String[] SYLLABLES = {"ra", "to", "mi", "sal", "ber", "co", "lun", "pe", "dra", "ne",
+            "vi", "sor", "ta", "gu", "lla", "fre", "mo", "zan", "chi", "plo"};
+    private static final String[] COMMON_WORDS = {"pesca", "orilla", "altura", "agua", "dulce", "salada",
+            "mar", "rio", "lago", "robalo", "pargo", "atun", "trucha", "resistente", "liviano", "acero"};
+
+    private ProductSearchIndex index;
+    private String[] commonWord;
+    private String[] twoWords;
+    private String[] rareWord;
+    private String[] typeahead;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(20250301L);
+        String[] vocabulary = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            vocabulary[i] = SYLLABLES[i % 20] + SYLLABLES[i / 20 % 20] + SYLLABLES[i / 400 % 20];
+        }
+
+        index = new ProductSearchIndex(null, 1000, 20, 2);
+        long start = System.nanoTime();
+        for (int id = 1; id <= PRODUCTS; id++) {
+            Product product = new Product();
+            product.setId(id);
+            product.setName(pick(random, TYPES) + " " + pick(random, ADJECTIVES) + " " + vocabulary[skewed(random)]
+                    + " " + (random.nextInt(90) + 10));
+            product.setBrand(pick(random, BRANDS));
+            int category = random.nextInt(CATEGORIES.length);
+            product.setCategorie(new Categorie(category + 1, CATEGORIES[category]));
+            StringBuilder description = new StringBuilder();
+            int words = 15 + random.nextInt(25);
+            for (int w = 0; w < words; w++) {
+                description.append(random.nextInt(3) == 0 ? pick(random, COMMON_WORDS) : vocabulary[skewed(random)])
+                        .append(' ');
+            }
+            product.setDescription(description.toString());
+            product.setPrice(BigDecimal.valueOf(random.nextInt(20_000_000), 2));
+            index.put(product);
+        }
+        System.out.println("Indice de " + PRODUCTS + " productos construido en "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        commonWord = new String[]{"caña", "señuelos", "kraken", "pesca", "carrete", "mar"};
+        twoWords = new String[]{"caña telescopica", "señuelo flotante", "kraken pesca", "linea trenzada",
+                "carrete shimano", "anzuelo acero"};
+        rareWord = new String[]{vocabulary[VOCABULARY - 1], vocabulary[VOCABULARY - 2],
+                "caña " + vocabulary[VOCABULARY - 3], vocabulary[VOCABULARY - 4] + " rapala"};
+        typeahead = new String[]{"ca", "se", "ra", "car", "señ", "tre", "caña te", "kraken pe"};
+    }
+
+    // Las palabras inventadas siguen una distribucion sesgada: pocas muy frecuentes y muchas raras
+    private static int skewed(Random random) {
+        double u = random.nextDouble();
+        return (int) (VOCABULARY * u * u * u);
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private String nextQuery(String[] queries) {
+        next = next + 1 == Integer.MAX_VALUE ? 0 : next + 1;
+        return queries[next % queries.length];
+    }
+
+    @Benchmark
+    public Object commonWord() {
+        return index.search(nextQuery(commonWord), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Object twoWords() {
+        return index.search(nextQuery(twoWords), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Object rareWord() {
+        return index.search(nextQuery(rareWord), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Object typeahead() {
+        return index.search(nextQuery(typeahead), PAGE_SIZE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ProductSearchIndexBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
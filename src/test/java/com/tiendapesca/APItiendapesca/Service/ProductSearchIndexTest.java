@@ -0,0 +1,133 @@
+package com.tiendapesca.APItiendapesca.Service;
+
+import com.tiendapesca.APItiendapesca.Dtos.ProductSearchResultDTO;
+import com.tiendapesca.APItiendapesca.Entities.Categorie;
+import com.tiendapesca.APItiendapesca.Entities.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Normalizacion de texto y busqueda del indice de productos, cargado con put() sin base de datos.
+ */
+class ProductSearchIndexTest {
+
+    private static final Categorie CANAS = new Categorie(1, "Cañas");
+    private static final Categorie SENUELOS = new Categorie(2, "Señuelos");
+    private static final Categorie CARRETES = new Categorie(3, "Carretes");
+
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductSearchIndex(null, 1000, 20, 2);
+        index.put(product(1, "Caña telescópica Kraken", "Kraken", CANAS, "Caña de 2.1 m para pesca de orilla"));
+        index.put(product(2, "Carrete Shimano 2500", "Shimano", CARRETES,
+                "Carrete liviano, ideal para cañas de pesca ligera"));
+        index.put(product(3, "Señuelo Rapala flotante", "Rapala", SENUELOS, "Señuelo de 9 cm para róbalo"));
+        index.put(product(4, "Señuelo vinilo", "Kraken", SENUELOS, "Vinilo suave"));
+        index.put(product(5, "Línea trenzada", "PowerPro", null,
+                "Línea de 20 lb resistente a la abrasión, compatible con señuelos, carretes y cañas. "
+                        + "Recomendada por pescadores de Kraken Club en torneos de altura y de orilla"));
+    }
+
+    @Test
+    void tokenizeFoldsAccentsAndCaseAndDropsStopwords() {
+        assertEquals(List.of("canas", "pescar"), ProductSearchIndex.tokenize("Cañas de PESCAR"));
+        assertEquals(List.of("senuelos", "anzuelos", "lineas"), ProductSearchIndex.tokenize("Señuelos, anzuelos/Líneas"));
+        assertEquals(List.of("2", "1", "m"), ProductSearchIndex.tokenize("2.1 m"));
+        assertTrue(ProductSearchIndex.tokenize("de la y con").isEmpty());
+        assertTrue(ProductSearchIndex.tokenize("   ").isEmpty());
+        assertTrue(ProductSearchIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    void accentsAndCaseDoNotChangeResults() {
+        assertEquals(ids(index.search("cañas", 10)), ids(index.search("canas", 10)));
+        assertEquals(ids(index.search("señuelos", 10)), ids(index.search("SENUELOS", 10)));
+        assertEquals(List.of(3, 4, 5), sorted(index.search("senuelos", 10)));
+    }
+
+    @Test
+    void lastWordIsCompletedAsPrefix() {
+        // "sen" completa a senuelo y senuelos
+        assertEquals(List.of(3, 4, 5), sorted(index.search("sen", 10)));
+        assertEquals(List.of(3), ids(index.search("senuelo rap", 10)));
+        // Las palabras anteriores a la ultima deben coincidir completas
+        assertTrue(index.search("sen rapala", 10).isEmpty());
+        // Prefijos mas cortos que min-prefix-length solo buscan el termino exacto
+        assertEquals(List.of(1), ids(index.search("m", 10)));
+    }
+
+    @Test
+    void stopwordsAreIgnoredInQueries() {
+        assertEquals(ids(index.search("caña orilla", 10)), ids(index.search("caña de la orilla", 10)));
+        assertTrue(index.search("de la", 10).isEmpty());
+    }
+
+    @Test
+    void everyWordMustMatch() {
+        assertEquals(List.of(4), ids(index.search("vinilo kraken", 10)));
+        assertTrue(index.search("shimano rapala", 10).isEmpty());
+    }
+
+    @Test
+    void bm25RanksNameMatchesAboveDescriptionMatches() {
+        List<ProductSearchResultDTO> results = index.search("kraken", 10);
+        // Nombre y marca (1) antes que solo marca (4), y ambos antes que una mencion en una descripcion larga (5)
+        assertEquals(List.of(1, 4, 5), ids(results));
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i - 1).getScore() >= results.get(i).getScore());
+        }
+        assertEquals("Cañas", results.get(0).getCategory());
+    }
+
+    @Test
+    void limitKeepsTheBestResults() {
+        assertEquals(List.of(1), ids(index.search("kraken", 1)));
+        assertTrue(index.search("kraken", 0).isEmpty());
+    }
+
+    @Test
+    void putReplacesAndRemoveDropsProducts() {
+        index.put(product(4, "Señuelo jig metálico", "Williamson", SENUELOS, null));
+        assertEquals(List.of(1, 5), ids(index.search("kraken", 10)));
+        assertEquals(List.of(4), ids(index.search("jig", 10)));
+
+        index.remove(1);
+        assertEquals(List.of(5), ids(index.search("kraken", 10)));
+        assertTrue(index.search("telescopica", 10).isEmpty());
+    }
+
+    @Test
+    void categoryNameIsReusedForProductsWithOnlyTheCategoryId() {
+        index.put(product(6, "Jig de plomo", "Kraken", new Categorie(2, null), null));
+        assertEquals("Señuelos", index.search("jig plomo", 10).get(0).getCategory());
+        assertTrue(ids(index.search("jig senuelos", 10)).contains(6));
+    }
+
+    private static Product product(int id, String name, String brand, Categorie categorie, String description) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        product.setBrand(brand);
+        product.setCategorie(categorie);
+        product.setDescription(description);
+        product.setPrice(new BigDecimal("10000.00"));
+        return product;
+    }
+
+    private static List<Integer> ids(List<ProductSearchResultDTO> results) {
+        return results.stream().map(ProductSearchResultDTO::getId).collect(Collectors.toList());
+    }
+
+    private static List<Integer> sorted(List<ProductSearchResultDTO> results) {
+        return ids(results).stream().sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,83 @@
+package com.tiendapesca.APItiendapesca.Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara ColonFormatter con String.format("%,.2f") sobre montos variados.
+ * Ejecutar con: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ColonFormatterBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ColonFormatterBenchmark {
+
+    private static final int AMOUNTS = 1024;
+
+    private BigDecimal[] amounts;
+    private long[] centimos;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        amounts = new BigDecimal[AMOUNTS];
+        centimos = new long[AMOUNTS];
+        for (int i = 0; i < AMOUNTS; i++) {
+            centimos[i] = (i * 104_729L) % 900_000_000L;
+            amounts[i] = BigDecimal.valueOf(centimos[i], 2);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void stringFormat(Blackhole blackhole) {
+        for (BigDecimal amount : amounts) {
+            blackhole.consume("₡ " + String.format("%,.2f", amount));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void colonFormatterBigDecimal(Blackhole blackhole) {
+        for (BigDecimal amount : amounts) {
+            blackhole.consume(ColonFormatter.formatWithSymbol(amount));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void colonFormatterCentimos(Blackhole blackhole) {
+        for (long value : centimos) {
+            blackhole.consume(ColonFormatter.format(value));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ColonFormatterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,75 @@
+package com.tiendapesca.APItiendapesca.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compara ColonFormatter con String.format(Locale.US, "%,.2f"), la salida que reemplaza.
+ */
+class ColonFormatterTest {
+
+    private static final int SAMPLES = 200_000;
+
+    @Test
+    void matchesStringFormatOnRandomAmounts() {
+        Random random = new Random(20250115L);
+        for (int i = 0; i < SAMPLES; i++) {
+            // Distintas escalas y magnitudes, la mitad negativos, incluidos los que redondean a cero
+            int scale = random.nextInt(6);
+            long unscaled = random.nextLong() >> random.nextInt(64);
+            BigDecimal amount = BigDecimal.valueOf(unscaled, scale);
+
+            String expected = String.format(Locale.US, "%,.2f", amount);
+            assertEquals(expected, ColonFormatter.format(amount), () -> "Monto " + amount.toPlainString());
+            assertEquals(ColonFormatter.SYMBOL + " " + expected, ColonFormatter.formatWithSymbol(amount),
+                    () -> "Monto con simbolo " + amount.toPlainString());
+            assertEquals(expected, ColonFormatter.append(new StringBuilder(), amount).toString(),
+                    () -> "Monto agregado " + amount.toPlainString());
+        }
+    }
+
+    @Test
+    void matchesStringFormatOnRandomCentimos() {
+        Random random = new Random(42L);
+        for (int i = 0; i < SAMPLES; i++) {
+            long centimos = random.nextLong() >> random.nextInt(64);
+            assertEquals(String.format(Locale.US, "%,.2f", BigDecimal.valueOf(centimos, 2)),
+                    ColonFormatter.format(centimos), () -> "Centimos " + centimos);
+        }
+    }
+
+    @Test
+    void matchesStringFormatOnEdgeCases() {
+        long[] centimos = {0, 1, -1, 99, -99, 100, -100, 99_999, -100_000, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : centimos) {
+            assertEquals(String.format(Locale.US, "%,.2f", BigDecimal.valueOf(value, 2)),
+                    ColonFormatter.format(value), () -> "Centimos " + value);
+        }
+
+        String[] amounts = {"0", "-0.001", "-0.004", "-0.005", "0.005", "0.004", "-0.00", "999.995", "-999.995",
+                "1234567.891", "-92233720368547758.08", "92233720368547758.07", "123456789012345678901234.5"};
+        for (String value : amounts) {
+            BigDecimal amount = new BigDecimal(value);
+            assertEquals(String.format(Locale.US, "%,.2f", amount), ColonFormatter.format(amount),
+                    () -> "Monto " + value);
+        }
+    }
+
+    @Test
+    void negativeAmountsThatRoundToZeroKeepTheSign() {
+        assertEquals("-0.00", ColonFormatter.format(new BigDecimal("-0.001")));
+        assertEquals("₡ -0.00", ColonFormatter.formatWithSymbol(new BigDecimal("-0.001")));
+        assertEquals("0.00", ColonFormatter.format(new BigDecimal("0.001")));
+    }
+
+    @Test
+    void nullAmount() {
+        assertEquals("null", ColonFormatter.format((BigDecimal) null));
+        assertEquals("₡ null", ColonFormatter.formatWithSymbol(null));
+    }
+}